@@ -0,0 +1,193 @@
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+
+// Active-rendering front end: a Canvas drawn through a BufferStrategy from its own
+// loop thread instead of the Swing Timer and repaint(). The simulation still
+// advances in fixed TICK_MILLIS steps, while frames are rendered at the target
+// frame rate with actors interpolated between the last two ticks, so a higher
+// refresh rate gives smoother motion without making the game faster.
+public class ActiveGame extends Canvas implements Runnable, KeyListener {
+    private static final long serialVersionUID = 1L;
+
+    Simulation sim; // Game state and rules, only touched by the loop thread
+    GameRenderer renderer; // Draws the game state
+    final int targetFps; // Frames per second to render at
+
+    // Keys are set on the event dispatch thread and taken by the loop thread with
+    // getAndSet, so a key released while a tick is applying the previous one is kept
+    final AtomicInteger pendingInput = new AtomicInteger(Simulation.NO_INPUT); // Latest key, for the next tick
+    final AtomicInteger pendingSaveState = new AtomicInteger(); // Save state key (see SaveStates), or 0
+    final SaveStates saveStates = new SaveStates(); // Quick-save and rewind, only used by the loop thread
+    private volatile boolean running = false; // Loop keeps going while this is set
+    private Thread loopThread; // Thread running the game loop
+    private int fittedWidth; // Board width the canvas was last sized for, only used by the loop thread
+    private int fittedHeight; // Board height the canvas was last sized for, only used by the loop thread
+
+    // Constructor to set up the canvas for a new classic game at the given frame rate
+    ActiveGame(int targetFps) {
+        this(new Simulation(Simulation.CLASSIC_MAP, 32, System.nanoTime()), targetFps); // 32 pixel tiles
+    }
+
+    // Constructor to show an existing simulation at the given frame rate
+    ActiveGame(Simulation sim, int targetFps) {
+        this.targetFps = targetFps;
+        this.sim = sim;
+        renderer = new GameRenderer(sim.tileSize);
+        fittedWidth = sim.boardWidth;
+        fittedHeight = sim.boardHeight;
+        setPreferredSize(new Dimension(fittedWidth, fittedHeight)); // Set the size of the canvas
+        setBackground(Color.BLACK); // Set background color to black
+        setIgnoreRepaint(true); // All drawing happens on the loop thread
+        addKeyListener(this); // Add this class as a key listener for input
+        setFocusable(true); // Allow the canvas to receive keyboard focus
+    }
+
+    // Start the loop thread; the canvas must already be displayable
+    public void start() {
+        createBufferStrategy(2); // Double buffering (page flipping where available)
+        running = true;
+        loopThread = new Thread(this, "game-loop");
+        loopThread.setDaemon(true);
+        loopThread.start();
+    }
+
+    // Ask the loop thread to finish and wait for it
+    public void stop() throws InterruptedException {
+        running = false;
+        if (loopThread != null) {
+            loopThread.join();
+        }
+    }
+
+    // Game loop: fixed-timestep simulation with interpolated rendering, paced
+    // with System.nanoTime()
+    @Override
+    public void run() {
+        final long tickNanos = Simulation.TICK_MILLIS * 1_000_000L;
+        final long frameNanos = 1_000_000_000L / targetFps;
+        long previous = System.nanoTime();
+        long accumulator = 0; // Simulated time still owed, in nanoseconds
+        long nextFrame = previous;
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - previous;
+            previous = now;
+            // After a long stall (debugger, window drag) skip ahead rather than
+            // running a burst of catch-up ticks
+            if (accumulator > 5 * tickNanos) {
+                accumulator = 5 * tickNanos;
+            }
+            int saveState = pendingSaveState.getAndSet(0);
+            if (saveState != 0 && sim.recorder == null) {
+                // Keys from before a restore do not apply to the restored game;
+                // if nothing was restored, the key taken is put back
+                int before = pendingInput.getAndSet(Simulation.NO_INPUT);
+                if (!saveStates.apply(sim, saveState)) {
+                    pendingInput.compareAndSet(Simulation.NO_INPUT, before);
+                }
+            }
+            while (accumulator >= tickNanos) {
+                // Update game state; each key press is applied once
+                sim.step((char) pendingInput.getAndSet(Simulation.NO_INPUT));
+                saveStates.record(sim);
+                accumulator -= tickNanos;
+            }
+            fitBoard(); // The next level may have a different size
+            render((float) accumulator / tickNanos);
+
+            // Wait for the next frame: sleep while more than a couple of
+            // milliseconds remain, then yield for the rest to stay accurate
+            nextFrame += frameNanos;
+            long remaining = nextFrame - System.nanoTime();
+            if (remaining < -frameNanos) {
+                nextFrame = System.nanoTime(); // Too far behind, don't try to catch up
+                continue;
+            }
+            while (remaining > 0) {
+                if (remaining > 2_000_000L) {
+                    try {
+                        Thread.sleep((remaining - 1_000_000L) / 1_000_000L);
+                    } catch (InterruptedException e) {
+                        running = false;
+                        return;
+                    }
+                } else {
+                    Thread.yield();
+                }
+                remaining = nextFrame - System.nanoTime();
+            }
+        }
+    }
+
+    // Resize the canvas and its window when the board changes size. Called from
+    // the loop thread, so the Swing state is changed on the event thread.
+    private void fitBoard() {
+        int width = sim.boardWidth;
+        int height = sim.boardHeight;
+        if (fittedWidth == width && fittedHeight == height) {
+            return;
+        }
+        fittedWidth = width;
+        fittedHeight = height;
+        SwingUtilities.invokeLater(() -> {
+            setPreferredSize(new Dimension(width, height));
+            Window window = SwingUtilities.getWindowAncestor(this);
+            if (window != null) {
+                window.pack();
+            }
+        });
+    }
+
+    // Draw one frame into the back buffer and show it
+    private void render(float alpha) {
+        BufferStrategy strategy = getBufferStrategy();
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    renderer.draw(g, sim, alpha);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored()); // Redraw if the buffer was restored mid-frame
+            strategy.show();
+            Toolkit.getDefaultToolkit().sync(); // Flush the frame on platforms that buffer it
+        } while (strategy.contentsLost()); // Redraw if the buffer was lost
+    }
+
+    // KeyListener methods (only keyReleased is used)
+    @Override
+    public void keyTyped(KeyEvent e) {
+    } // Not used
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+    } // Not used
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        if (e.getKeyCode() == KeyEvent.VK_F3) { // F3 toggles the debug overlay
+            renderer.showOverlay = !renderer.showOverlay;
+            return;
+        }
+        if (SaveStates.handles(e.getKeyCode())) { // F5, F9 and Backspace save, load and rewind
+            pendingSaveState.set(e.getKeyCode());
+            return;
+        }
+        // Queue Pac-Man's new direction based on arrow key input
+        if (e.getKeyCode() == KeyEvent.VK_UP) {
+            pendingInput.set('U');
+        } else if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+            pendingInput.set('D');
+        } else if (e.getKeyCode() == KeyEvent.VK_LEFT) {
+            pendingInput.set('L');
+        } else if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
+            pendingInput.set('R');
+        } else {
+            pendingInput.set(Simulation.ANY_KEY);
+        }
+    }
+}
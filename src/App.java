@@ -1,24 +1,93 @@
 
 // Import the JFrame class from the javax.swing package, which is used to create a window for the application
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.JFrame;
 
 // Define the main class for the application
 public class App {
     // The main method serves as the entry point for the program
+    // Usage: java App [--levels=DIR | --generate=SEED [--size=ROWSxCOLUMNS]] [--active] [--fps=N]
+    //                [--record=FILE] [--replay=FILE] [--speed=N]
+    // --levels plays the *.txt tile maps in DIR in rotation instead of the classic map
+    // --generate plays an endless series of procedurally generated mazes, the
+    // first one from SEED, each the size of the classic map unless --size is given
+    // --active renders from a dedicated loop thread through a BufferStrategy at N
+    // frames per second (default 60) instead of the Swing Timer and repaint()
+    // --record saves the session as a replay, --replay plays one back at N times
+    // normal speed
     public static void main(String[] args) throws Exception {
-        // Define the number of rows in the game board grid (21 rows)
-        int rowCount = 21;
-        // Define the number of columns in the game board grid (19 columns)
-        int columnCount = 19;
+        long startTime = System.nanoTime(); // For the startup time report
+        boolean active = false; // Use the active rendering loop
+        int targetFps = 60; // Frame rate for the active rendering loop
+        String recordFile = null; // Replay file to record to
+        String replayFile = null; // Replay file to play back
+        double replaySpeed = 1; // Playback speed multiplier
+        String levelsDirectory = null; // Directory of level files
+        Long generateSeed = null; // Seed of the first generated level, null to play fixed levels
+        int generateRows = Simulation.CLASSIC_MAP.length; // Size of the generated levels
+        int generateColumns = Simulation.CLASSIC_MAP[0].length();
+        for (String arg : args) {
+            if (arg.startsWith("--levels=")) {
+                levelsDirectory = arg.substring("--levels=".length());
+            } else if (arg.startsWith("--generate=")) {
+                generateSeed = Long.parseLong(arg.substring("--generate=".length()));
+            } else if (arg.startsWith("--size=")) {
+                String[] size = arg.substring("--size=".length()).split("x");
+                generateRows = Integer.parseInt(size[0]);
+                generateColumns = Integer.parseInt(size[1]);
+            } else if (arg.equals("--active")) {
+                active = true;
+            } else if (arg.startsWith("--fps=")) {
+                targetFps = Integer.parseInt(arg.substring("--fps=".length()));
+            } else if (arg.startsWith("--record=")) {
+                recordFile = arg.substring("--record=".length());
+            } else if (arg.startsWith("--replay=")) {
+                replayFile = arg.substring("--replay=".length());
+            } else if (arg.startsWith("--speed=")) {
+                replaySpeed = Double.parseDouble(arg.substring("--speed=".length()));
+            }
+        }
+
+        if (replayFile != null) {
+            // Play back a recorded session in its own window
+            ReplayPlayer.show(new ReplayPlayer(Paths.get(replayFile)), replaySpeed);
+            return;
+        }
+
         // Set the size of each tile in the game board to 32 pixels (both width and
         // height)
         int tileSize = 32;
-        // Calculate the total width of the game board in pixels by multiplying the
-        // number of columns by the tile size
-        int boardWidth = columnCount * tileSize; // 19 * 32 = 608 pixels
-        // Calculate the total height of the game board in pixels by multiplying the
-        // number of rows by the tile size
-        int boardHeight = rowCount * tileSize; // 21 * 32 = 672 pixels
+        // Start loading the sprites in the background while the level and window
+        // are set up; the renderer waits for them if they are not ready yet
+        CompletableFuture<SpriteAtlas> sprites = CompletableFuture.supplyAsync(() -> SpriteAtlas.forTileSize(tileSize));
+        // Load the first level; the board size in rows and columns comes from the map
+        MazeLayout firstLevel = new MazeLayout(Simulation.CLASSIC_MAP);
+        LevelLibrary levels = null;
+        if (levelsDirectory != null) {
+            levels = new LevelLibrary(Paths.get(levelsDirectory));
+            firstLevel = levels.level(0);
+        }
+        GeneratedLevels generated = null;
+        if (generateSeed != null) {
+            generated = new GeneratedLevels(new MazeGenerator(generateRows, generateColumns));
+            firstLevel = generated.level(generateSeed);
+        }
+        // Create the game itself, seeded from the clock, with phase timers that are
+        // exposed over JMX and shown on screen with F3
+        Simulation sim = new Simulation(firstLevel, tileSize, System.nanoTime());
+        sim.stats = new TickStats().register("game");
+        if ((levels != null && levels.size() > 1) || generated != null) {
+            if (recordFile != null) {
+                // A replay stores a single map, so it cannot follow a level rotation
+                System.err.println("--record cannot be combined with --generate or a multi-level --levels directory");
+                System.exit(2);
+            }
+            // Move on to the next level whenever one is cleared; generated levels
+            // are made in the background before they are needed
+            sim.nextLevel = generated != null ? generated.sequence(generateSeed) : levels.rotation(0);
+        }
 
         // Create a new JFrame object (a window) with the title "Pac Man" displayed in
         // the title bar
@@ -27,12 +96,6 @@ public class App {
         // immediately
         // frame.setVisible(true);
 
-        // Set the size of the window to match the calculated dimensions of the game
-        // board (608x672 pixels)
-        frame.setSize(boardWidth, boardHeight);
-        // Center the window on the user's screen by setting its location relative to
-        // null
-        frame.setLocationRelativeTo(null);
         // Prevent the user from resizing the window, ensuring the game board dimensions
         // remain fixed
         frame.setResizable(false);
@@ -40,21 +103,65 @@ public class App {
         // close button
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
+        if (active) {
+            // Create the active-rendering canvas; its loop thread can only start once
+            // the frame is showing and the canvas has a BufferStrategy
+            ActiveGame activeGame = new ActiveGame(sim, targetFps);
+            if (recordFile != null) {
+                record(sim, recordFile);
+            }
+            frame.add(activeGame);
+            frame.pack(); // Size the window from the map
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+            activeGame.requestFocus();
+            activeGame.start();
+            reportStartup(sprites.join(), startTime);
+            return;
+        }
+
         // Create an instance of the PacMan class, which contain the game logic and
         // rendering for Pac-Man
-        PacMan pacmanGame = new PacMan();
+        PacMan pacmanGame = new PacMan(sim, null, Simulation.TICK_MILLIS);
+        if (recordFile != null) {
+            record(sim, recordFile);
+        }
         // Add the PacMan game component to the frame, making it the content displayed
         // within the window
         frame.add(pacmanGame);
         // Adjust the frame's size to fit the preferred size of its components (e.g.,
-        // the PacMan component),
-        // accounting for window borders and title bar; this may override the earlier
-        // setSize call
+        // the PacMan component, which is sized from the map),
+        // accounting for window borders and title bar
         frame.pack();
+        // Center the window on the user's screen by setting its location relative to
+        // null
+        frame.setLocationRelativeTo(null);
         // Request focus for the PacMan component so it can receive keyboard input
         // (e.g., to move Pac-Man)
         pacmanGame.requestFocus();
         // Make the frame visible on the screen, displaying the Pac-Man game to the user
         frame.setVisible(true);
+        // Start ticking only now that the recorder (if any) is attached, so the
+        // replay covers every tick from the state its header describes
+        pacmanGame.start();
+        reportStartup(sprites.join(), startTime);
+    }
+
+    // Print how long the sprites and the whole startup took
+    private static void reportStartup(SpriteAtlas sprites, long startTime) {
+        System.out.println(sprites.report());
+        System.out.printf("Startup: window shown after %.1f ms%n", (System.nanoTime() - startTime) / 1e6);
+    }
+
+    // Record a game to a replay file, finishing the file when the program exits
+    private static void record(Simulation sim, String file) throws IOException {
+        ReplayRecorder recorder = ReplayRecorder.attach(sim, Paths.get(file));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                recorder.finish(sim.tick);
+            } catch (IOException e) {
+                System.err.println("Could not finish replay " + file + ": " + e);
+            }
+        }));
     }
-}
\ No newline at end of file
+}
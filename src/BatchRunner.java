@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+// Plays many independent headless games in parallel on a work-stealing pool and
+// aggregates the results, for scoring bot controllers
+public class BatchRunner {
+    // Outcome of a single game
+    static class GameResult {
+        long seed; // Seed the game was played with
+        int score; // Final score
+        int livesLost; // Lives lost before the game ended
+        long ticksSurvived; // Ticks played until game over (or the tick limit)
+        long foodClearTick = -1; // Tick on which the first board was cleared, -1 if never
+    }
+
+    final MazeLayout layout; // Parsed once and shared read-only by every game
+    final int tileSize; // Tile size used by every game
+    final long maxTicks; // Tick limit for games that never end
+    final LongFunction<Controller> controllers; // Builds a controller for a game seed
+
+    // Constructor to set up a runner for the given layout and controller factory
+    BatchRunner(MazeLayout layout, int tileSize, long maxTicks, LongFunction<Controller> controllers) {
+        this.layout = layout;
+        this.tileSize = tileSize;
+        this.maxTicks = maxTicks;
+        this.controllers = controllers;
+    }
+
+    // Play one game to completion with its own seeded Simulation and controller
+    GameResult play(long seed) {
+        Simulation sim = new Simulation(layout, tileSize, seed);
+        Controller controller = controllers.apply(seed);
+        GameResult result = new GameResult();
+        result.seed = seed;
+        int startLives = sim.lives;
+        while (!sim.gameOver && sim.tick < maxTicks) {
+            sim.step(controller.decide(sim));
+            if (result.foodClearTick < 0 && sim.levelsCleared > 0) {
+                result.foodClearTick = sim.tick;
+            }
+        }
+        result.score = sim.score;
+        result.livesLost = startLives - sim.lives;
+        result.ticksSurvived = sim.tick;
+        return result;
+    }
+
+    // Play the given number of games on the given number of threads; game i uses
+    // seed baseSeed + i so a run is reproducible
+    List<GameResult> run(int games, int threads, long baseSeed) throws Exception {
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        try {
+            List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>(games);
+            for (int i = 0; i < games; i++) {
+                long seed = baseSeed + i;
+                futures.add(pool.submit(() -> play(seed)));
+            }
+            List<GameResult> results = new ArrayList<GameResult>(games);
+            for (Future<GameResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Build a summary report of a batch of results
+    static String summarize(List<GameResult> results, long elapsedNanos) {
+        long totalScore = 0;
+        long totalLivesLost = 0;
+        long totalTicks = 0;
+        long totalClearTicks = 0;
+        int clears = 0;
+        int minScore = Integer.MAX_VALUE;
+        int maxScore = Integer.MIN_VALUE;
+        for (GameResult result : results) {
+            totalScore += result.score;
+            totalLivesLost += result.livesLost;
+            totalTicks += result.ticksSurvived;
+            minScore = Math.min(minScore, result.score);
+            maxScore = Math.max(maxScore, result.score);
+            if (result.foodClearTick >= 0) {
+                clears++;
+                totalClearTicks += result.foodClearTick;
+            }
+        }
+        int games = results.size();
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("games:           %d%n", games));
+        report.append(String.format("score:           mean %.1f, min %d, max %d%n",
+                (double) totalScore / games, minScore, maxScore));
+        report.append(String.format("lives lost:      mean %.2f%n", (double) totalLivesLost / games));
+        report.append(String.format("ticks survived:  mean %.1f%n", (double) totalTicks / games));
+        if (clears > 0) {
+            report.append(String.format("food cleared:    %d games, mean tick %.1f%n",
+                    clears, (double) totalClearTicks / clears));
+        } else {
+            report.append(String.format("food cleared:    0 games%n"));
+        }
+        report.append(String.format("wall time:       %.2f s (%.0f ticks/s)%n", seconds, totalTicks / seconds));
+        return report.toString();
+    }
+
+    // Simple bot: keeps its direction and picks a random one now and then, or
+    // whenever Pac-Man has stopped against a wall
+    static class WanderBot implements Controller {
+        private final Random random; // Bot's own seeded random generator
+        private final char[] directions = { 'U', 'D', 'L', 'R' };
+
+        WanderBot(long seed) {
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public char decide(Simulation sim) {
+            Block pacman = sim.pacman;
+            boolean stopped = pacman.velocityX == 0 && pacman.velocityY == 0;
+            if (stopped || random.nextInt(16) == 0) {
+                return directions[random.nextInt(4)];
+            }
+            return Simulation.NO_INPUT;
+        }
+    }
+
+    // Entry point: java BatchRunner [games] [threads] [maxTicks] [baseSeed]
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long maxTicks = args.length > 2 ? Long.parseLong(args[2]) : 20 * 60 * 1000 / Simulation.TICK_MILLIS;
+        long baseSeed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        MazeLayout layout = new MazeLayout(Simulation.CLASSIC_MAP);
+        // Each bot gets a seed derived from, but different to, its game's seed
+        BatchRunner runner = new BatchRunner(layout, 32, maxTicks, seed -> new WanderBot(~seed));
+        long start = System.nanoTime();
+        List<GameResult> results = runner.run(games, threads, baseSeed);
+        System.out.print(summarize(results, System.nanoTime() - start));
+    }
+}
@@ -0,0 +1,276 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Self-contained micro-benchmark suite for the hot paths: the tick loop, ghost
+// collisions, loadMap(), spawnCherry(), path distances to changing targets, a
+// snapshot save and restore, and drawing to an offscreen image. Each benchmark
+// is run for every combination of maze scale and ghost count and reports
+// ns/op, ops/s and bytes allocated per op, read from the thread's allocation
+// counter.
+//
+// This is a plain timing loop, not JMH, and its numbers are rougher: every
+// benchmark runs in the same JVM (no forks), so profiles and JIT decisions
+// carry over from one to the next; results only go into a volatile sink rather
+// than a Blackhole, so some dead-code elimination is possible; and the clock is
+// read once per batch of 64 operations, so ns/op is an average with no error
+// bounds. Compare runs made on the same machine with the same arguments.
+//
+// Usage: java Bench [-maze 1,2,4] [-ghosts 4,16,64] [-warmup ms] [-time ms]
+//                   [-assertZeroAlloc] [name ...]
+// With -assertZeroAlloc the run fails (exit status 1) if any measured benchmark
+// allocated memory after warmup, e.g. "java Bench -assertZeroAlloc tick collision".
+public class Bench {
+    // A single benchmarked operation; run() returns a value that is folded into
+    // a sink so the JIT cannot remove the work
+    interface Op {
+        long run();
+    }
+
+    // Builds the operation for one parameter combination
+    interface Setup {
+        Op create(MazeLayout layout);
+    }
+
+    static final int TILE_SIZE = 32; // Tile size used by every benchmark
+    // Targets the retarget benchmark cycles through, far more than the distance
+    // cache holds so every lookup on a large maze is a miss
+    static final int CYCLED_TARGETS = 4 * DistanceFields.CACHE_SLOTS + 1;
+    static volatile long sink; // Consumes benchmark results
+
+    // Per-thread allocation counter (HotSpot extension of ThreadMXBean)
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Build a tile map made of scale x scale copies of the classic map with a
+    // single Pac-Man and the requested number of ghosts spread over open tiles
+    static String[] scaledMap(int scale, int ghostCount) {
+        String[] base = Simulation.CLASSIC_MAP;
+        int rows = base.length * scale;
+        int columns = base[0].length() * scale;
+        char[][] tiles = new char[rows][columns];
+        List<int[]> open = new ArrayList<int[]>();
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                char tile = base[r % base.length].charAt(c % base[0].length());
+                if (tile == 'P' || tile == 'b' || tile == 'o' || tile == 'p' || tile == 'r') {
+                    tile = ' '; // Actors are placed below
+                }
+                tiles[r][c] = tile;
+                if (tile == ' ') {
+                    open.add(new int[] { r, c });
+                }
+            }
+        }
+        int[] pacman = open.get(open.size() / 2);
+        tiles[pacman[0]][pacman[1]] = 'P';
+        char[] ghostTypes = { 'r', 'b', 'p', 'o' };
+        // Spread the ghosts evenly over the open tiles, moving on to the next free
+        // tile when one is already taken
+        for (int i = 0; i < ghostCount && i < open.size() - 1; i++) {
+            int index = (int) ((long) i * open.size() / ghostCount);
+            int[] tile = open.get(index);
+            while (tiles[tile[0]][tile[1]] != ' ') {
+                index = (index + 1) % open.size();
+                tile = open.get(index);
+            }
+            tiles[tile[0]][tile[1]] = ghostTypes[i % 4];
+        }
+        String[] tileMap = new String[rows];
+        for (int r = 0; r < rows; r++) {
+            tileMap[r] = new String(tiles[r]);
+        }
+        return tileMap;
+    }
+
+    // A simulation that never ends, so the tick benchmark keeps doing real work
+    static Simulation endlessSimulation(MazeLayout layout) {
+        Simulation sim = new Simulation(layout, TILE_SIZE, 42);
+        sim.lives = Integer.MAX_VALUE;
+        return sim;
+    }
+
+    // Fixed, repeating input sequence for the tick benchmark
+    static char[] inputs(int length) {
+        char[] inputs = new char[length];
+        char[] directions = { 'U', 'L', 'D', 'R' };
+        for (int i = 0; i < length; i++) {
+            inputs[i] = i % 8 == 0 ? directions[(i / 8) % 4] : Simulation.NO_INPUT;
+        }
+        return inputs;
+    }
+
+    // The benchmarks, by name
+    static Setup setup(String name) {
+        switch (name) {
+            case "tick": // One full Simulation.step(), i.e. move() plus input
+                return layout -> {
+                    Simulation sim = endlessSimulation(layout);
+                    char[] inputs = inputs(1024);
+                    return () -> {
+                        sim.step(inputs[(int) (sim.tick & 1023)]);
+                        return sim.score;
+                    };
+                };
+            case "collision": // Pac-Man against the ghosts in the hash buckets around him
+                return layout -> {
+                    Simulation sim = endlessSimulation(layout);
+                    int[] touching = new int[sim.ghosts.count];
+                    return () -> sim.touchingGhosts(sim.pacman, touching);
+                };
+            case "loadMap": // Rebuilding the board after it has been cleared
+                return layout -> {
+                    Simulation sim = endlessSimulation(layout);
+                    return () -> {
+                        sim.loadMap();
+                        return sim.grid.foodCount;
+                    };
+                };
+            case "spawnCherry": // Picking a random open tile for the cherry
+                return layout -> {
+                    Simulation sim = endlessSimulation(layout);
+                    return () -> {
+                        sim.spawnCherry();
+                        return sim.cherry.x;
+                    };
+                };
+            case "retarget": // Path distance to a new target every op: a cache miss above the all-pairs limit
+                return layout -> {
+                    DistanceFields distances = layout.distances();
+                    int[] targets = new int[CYCLED_TARGETS];
+                    for (int i = 0; i < targets.length; i++) {
+                        targets[i] = distances.cellOfNode[(int) ((long) i * distances.nodeCount / targets.length)];
+                    }
+                    int[] next = { 0 };
+                    return () -> {
+                        int target = targets[next[0]];
+                        next[0] = (next[0] + 1) % targets.length;
+                        return distances.distance(distances.cellOfNode[0], target);
+                    };
+                };
+            case "snapshot": // Saving the game state and restoring it again
+                return layout -> {
+                    Simulation sim = endlessSimulation(layout);
+                    ByteBuffer buffer = ByteBuffer.allocate(Snapshot.maxSize(layout));
+                    return () -> {
+                        buffer.clear();
+                        Snapshot.save(sim, buffer);
+                        buffer.flip();
+                        Snapshot.restore(sim, buffer);
+                        return buffer.position();
+                    };
+                };
+            case "draw": // Rendering a frame into an offscreen image
+                return layout -> {
+                    Simulation sim = endlessSimulation(layout);
+                    GameRenderer renderer = new GameRenderer(sim.tileSize);
+                    BufferedImage image = new BufferedImage(sim.boardWidth, sim.boardHeight,
+                            BufferedImage.TYPE_INT_RGB);
+                    Graphics2D g = image.createGraphics();
+                    return () -> {
+                        renderer.draw(g, sim);
+                        return image.getRGB(0, 0);
+                    };
+                };
+            default:
+                throw new IllegalArgumentException("Unknown benchmark: " + name);
+        }
+    }
+
+    // Run an operation in batches for the given time; returns {ops, nanos, bytes}
+    static long[] measure(Op op, long millis) {
+        long threadId = Thread.currentThread().getId();
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        long ops = 0;
+        long result = 0;
+        long bytesBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long now;
+        do {
+            for (int i = 0; i < 64; i++) {
+                result += op.run();
+            }
+            ops += 64;
+            now = System.nanoTime();
+        } while (now < deadline);
+        long bytes = THREADS.getThreadAllocatedBytes(threadId) - bytesBefore;
+        sink += result;
+        return new long[] { ops, now - start, bytes };
+    }
+
+    // Parse a comma-separated list of integers
+    static int[] parseList(String value) {
+        String[] parts = value.split(",");
+        int[] list = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            list[i] = Integer.parseInt(parts[i].trim());
+        }
+        return list;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true"); // Benchmarks never open a window
+        int[] scales = { 1, 2, 4 };
+        int[] ghostCounts = { 4, 16, 64 };
+        long warmupMillis = 1000;
+        long measureMillis = 2000;
+        boolean assertZeroAlloc = false;
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-maze")) {
+                scales = parseList(args[++i]);
+            } else if (args[i].equals("-ghosts")) {
+                ghostCounts = parseList(args[++i]);
+            } else if (args[i].equals("-warmup")) {
+                warmupMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-time")) {
+                measureMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-assertZeroAlloc")) {
+                assertZeroAlloc = true;
+            } else {
+                names.add(args[i]);
+            }
+        }
+        if (names.isEmpty()) {
+            names.add("tick");
+            names.add("collision");
+            names.add("loadMap");
+            names.add("spawnCherry");
+            names.add("retarget");
+            names.add("snapshot");
+            names.add("draw");
+        }
+
+        List<String> allocating = new ArrayList<String>(); // Runs that allocated memory
+        System.out.printf("%-12s %8s %7s %14s %14s %10s%n", "Benchmark", "maze", "ghosts", "ns/op", "ops/s", "B/op");
+        for (String name : names) {
+            Setup setup = setup(name);
+            for (int scale : scales) {
+                for (int ghostCount : ghostCounts) {
+                    MazeLayout layout = new MazeLayout(scaledMap(scale, ghostCount));
+                    Op op = setup.create(layout);
+                    measure(op, warmupMillis); // Let the JIT compile the hot path
+                    long[] m = measure(op, measureMillis);
+                    double nsPerOp = (double) m[1] / m[0];
+                    System.out.printf("%-12s %8s %7d %14.1f %14.0f %10.1f%n", name,
+                            layout.rowCount + "x" + layout.columnCount, layout.ghostTypes.length,
+                            nsPerOp, 1e9 / nsPerOp, (double) m[2] / m[0]);
+                    if (m[2] > 0) {
+                        allocating.add(name + " " + layout.rowCount + "x" + layout.columnCount
+                                + " ghosts=" + layout.ghostTypes.length + ": " + m[2] + " bytes");
+                    }
+                }
+            }
+        }
+        if (assertZeroAlloc && !allocating.isEmpty()) {
+            System.out.println("FAILED: steady-state allocation detected");
+            for (String line : allocating) {
+                System.out.println("  " + line);
+            }
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+// Class to represent moving game objects such as Pac-Man, ghosts and the cherry
+// (walls and food are tracked by the TileGrid)
+public class Block {
+    int x; // X-coordinate of the block
+    int y; // Y-coordinate of the block
+    int width; // Width of the block
+    int height; // Height of the block
+    char type; // Tile map character of the block (P, b, o, p, r) or 'c' for the cherry
+
+    int prevX; // X-coordinate at the start of the current tick (for interpolated rendering)
+    int prevY; // Y-coordinate at the start of the current tick
+
+    int startX; // Initial X-coordinate for resetting
+    int startY; // Initial Y-coordinate for resetting
+    char direction = 'U'; // Current direction: U (Up), D (Down), L (Left), R (Right)
+    char desiredDirection = Simulation.NO_INPUT; // Queued turn, taken as soon as the maze allows it
+    int velocityX = 0; // Velocity in the X direction
+    int velocityY = 0; // Velocity in the Y direction
+
+    // Constructor to initialize a block with its type and position
+    Block(char type, int x, int y, int width, int height) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.startX = x; // Store starting position for resets
+        this.startY = y;
+        this.prevX = x;
+        this.prevY = y;
+    }
+
+    // Update velocity based on the current direction
+    void updateVelocity(int tileSize) {
+        this.velocityX = velocityX(this.direction, tileSize);
+        this.velocityY = velocityY(this.direction, tileSize);
+    }
+
+    // X velocity for a direction: 1/4 tile size per frame left (L) or right (R)
+    static int velocityX(char direction, int tileSize) {
+        if (direction == 'L') { // Left
+            return -tileSize / 4;
+        } else if (direction == 'R') { // Right
+            return tileSize / 4;
+        }
+        return 0;
+    }
+
+    // Y velocity for a direction: 1/4 tile size per frame up (U) or down (D)
+    static int velocityY(char direction, int tileSize) {
+        if (direction == 'U') { // Up
+            return -tileSize / 4;
+        } else if (direction == 'D') { // Down
+            return tileSize / 4;
+        }
+        return 0;
+    }
+
+    // Reset the block to its initial position
+    void reset() {
+        this.x = this.startX;
+        this.y = this.startY;
+    }
+}
@@ -0,0 +1,35 @@
+// Chase strategy, with the classic per-ghost targeting:
+// red (r) and blue (b) head for Pac-Man's tile, pink (p) aims four tiles ahead of
+// Pac-Man, and orange (o) only chases while it is more than eight tiles away,
+// otherwise it falls back to its scatter corner. With several Pac-Men each ghost
+// goes after the nearest one.
+public class ChaseBrain implements GhostBrain {
+    static final int PINK_LOOKAHEAD = 4; // Tiles ahead of Pac-Man the pink ghost aims for
+    static final int ORANGE_SHY_DISTANCE = 8; // Orange gives up the chase this close to Pac-Man
+
+    @Override
+    public char decide(Simulation sim, int ghost) {
+        Block pacman = sim.nearestPacman(ghost);
+        int pacmanCell = sim.pacmanCell(pacman);
+        int target = pacmanCell;
+        char type = sim.ghosts.type[ghost];
+        if (type == 'p') {
+            // Walk ahead of Pac-Man along its direction while the tiles are open
+            int ahead = pacmanCell;
+            for (int i = 0; i < PINK_LOOKAHEAD; i++) {
+                int next = sim.neighbourCell(ahead, pacman.direction);
+                if (next < 0) {
+                    break;
+                }
+                ahead = next;
+            }
+            target = ahead;
+        } else if (type == 'o') {
+            int distance = sim.layout.distances().distance(sim.ghostCell(ghost), pacmanCell);
+            if (distance <= ORANGE_SHY_DISTANCE) {
+                target = ScatterBrain.homeCorner(sim, ghost);
+            }
+        }
+        return GhostBrain.steerTowards(sim, ghost, target);
+    }
+}
@@ -0,0 +1,6 @@
+// Decides Pac-Man's input for the next tick; used to drive a Simulation
+// without a keyboard (bots, batch runs)
+public interface Controller {
+    // Return a direction (U, D, L, R) or Simulation.NO_INPUT for the next step
+    char decide(Simulation sim);
+}
@@ -0,0 +1,301 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+// Shortest-path distances (in tiles) between the open tiles of a layout, found by
+// breadth-first search over the tile graph (following each tile's exits, so
+// tunnels count as a single step). Walls never move, so the distances
+// are computed once per layout and shared by every game on it: small mazes get
+// an all-pairs table up front, large ones compute one field per target tile on
+// first use and keep it in a small set-associative cache, where a handful of
+// live targets (one or two per Pac-Man) rarely evict each other. A lookup is
+// O(1) except on a cache miss, which costs one search but allocates nothing:
+// the fields of fixed targets (the scatter corners, Pac-Man's spawn tile and,
+// on boards with few ghosts, theirs) are built up front, and a miss rebuilds
+// the evicted field in place. Lookups may come from several threads (parallel
+// ghost chunks, vectorised environments); they read fields optimistically and
+// retry under the set's lock if a field was rebuilt, so misses in different
+// sets are searched in parallel.
+//
+// On mazes too big to search whole within a tick (more than FULL_FIELD_LIMIT
+// open tiles, e.g. the swarm's), cached fields only reach FIELD_RADIUS steps
+// from their target, so a miss costs the same however big the maze is. Tiles
+// further away get an estimate instead: FIELD_RADIUS plus their straight-line
+// tile distance, which is more than any distance inside the field and still
+// points a ghost the right way until it comes within range.
+public class DistanceFields {
+    static final int ALL_PAIRS_LIMIT = 1024; // Most open tiles for an all-pairs table (2 MB)
+    static final int CACHE_SLOTS = 64; // Per-target fields kept for large mazes
+    static final int CACHE_WAYS = 8; // Slots a target may occupy, within its set
+    static final int FULL_FIELD_LIMIT = 16384; // Most open tiles for cached fields covering the whole maze
+    static final int FIELD_RADIUS = 64; // Steps a cached field reaches on bigger mazes
+    static final int PINNED_SPAWNS = 16; // Most ghosts whose spawn tiles get a permanent field
+    static final int UNREACHABLE = Integer.MAX_VALUE; // Distance to or from a wall or a cut-off tile
+
+    // A distance field towards one target tile, rebuilt in place when its cache
+    // slot is taken over by another target. The search queue is kept with it:
+    // it lists the cells the search reached, which are all a rebuild has to
+    // clear.
+    private static final class Field {
+        final StampedLock lock = new StampedLock(); // Write-locked while the field is rebuilt
+        final int[] distances; // Distance from every cell to the target, UNREACHABLE if not reached
+        final int[] queue; // Cells reached by the last search, in search order
+        int reached = 0; // Number of cells in the queue
+        int target; // Cell index of the target tile
+
+        Field(int cellCount, int queueSize) {
+            this.distances = new int[cellCount];
+            this.queue = new int[queueSize];
+            Arrays.fill(distances, UNREACHABLE);
+        }
+    }
+
+    // One set of the cache; misses in the set are handled under its lock
+    private static final class CacheSet {
+        int nextEvicted = 0; // Way to evict next (round robin)
+    }
+
+    final MazeLayout layout; // Layout the distances belong to
+    final int[] nodeOfCell; // Node number of each open cell, -1 for walls
+    final int[] cellOfNode; // Cell index of each node
+    final int nodeCount; // Number of open tiles
+    final int[] corners; // Open cells nearest the top-left, top-right, bottom-left and bottom-right corners
+    final int fieldRadius; // Steps cached fields reach (UNREACHABLE - 1 when they cover the whole maze)
+
+    private final short[] allPairs; // nodeCount x nodeCount distances (-1 = unreachable), or null
+    private final AtomicReferenceArray<Field> cache; // Per-target cache, CACHE_WAYS slots per set, or null
+    private final CacheSet[] sets; // Lock, queue and eviction state of each cache set, or null
+    private final int[] pinnedIndex; // Index into pinned of each cell's permanent field, or -1; null if small
+    private final int[][] pinned; // Permanent fields of the fixed targets
+
+    // Constructor to number the open tiles and build the all-pairs table if the maze is small
+    DistanceFields(MazeLayout layout) {
+        this.layout = layout;
+        int cellCount = layout.rowCount * layout.columnCount;
+        nodeOfCell = new int[cellCount];
+        int nodes = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            nodeOfCell[cell] = layout.cells[cell] == TileGrid.WALL ? -1 : nodes++;
+        }
+        nodeCount = nodes;
+        cellOfNode = new int[nodes];
+        for (int cell = 0; cell < cellCount; cell++) {
+            if (nodeOfCell[cell] >= 0) {
+                cellOfNode[nodeOfCell[cell]] = cell;
+            }
+        }
+        corners = new int[] {
+                nearestOpenCell(0, 0),
+                nearestOpenCell(0, layout.columnCount - 1),
+                nearestOpenCell(layout.rowCount - 1, 0),
+                nearestOpenCell(layout.rowCount - 1, layout.columnCount - 1) };
+
+        int[] queue = new int[cellCount]; // For the searches made up front
+        fieldRadius = nodes <= FULL_FIELD_LIMIT ? UNREACHABLE - 1 : FIELD_RADIUS;
+        if (nodes <= ALL_PAIRS_LIMIT) {
+            allPairs = new short[nodes * nodes];
+            int[] field = new int[cellCount];
+            for (int node = 0; node < nodes; node++) {
+                Arrays.fill(field, UNREACHABLE);
+                search(cellOfNode[node], UNREACHABLE - 1, field, queue);
+                int row = node * nodes;
+                for (int other = 0; other < nodes; other++) {
+                    int distance = field[cellOfNode[other]];
+                    allPairs[row + other] = distance == UNREACHABLE ? -1 : (short) distance;
+                }
+            }
+            cache = null;
+            sets = null;
+            pinnedIndex = null;
+            pinned = null;
+        } else {
+            allPairs = null;
+            cache = new AtomicReferenceArray<Field>(CACHE_SLOTS);
+            sets = new CacheSet[CACHE_SLOTS / CACHE_WAYS];
+            for (int i = 0; i < sets.length; i++) {
+                sets[i] = new CacheSet();
+            }
+            // Fixed targets: the scatter corners, Pac-Man's spawn tile (which
+            // validate() measures every tile against) and the spawn tiles eaten
+            // ghosts head back to, unless there are too many of them to keep
+            pinnedIndex = new int[cellCount];
+            Arrays.fill(pinnedIndex, -1);
+            int[] targets = Arrays.copyOf(corners, 5 + PINNED_SPAWNS);
+            targets[4] = layout.pacmanRow * layout.columnCount + layout.pacmanColumn;
+            int targetCount = 5;
+            if (layout.ghostTypes.length <= PINNED_SPAWNS) {
+                for (int i = 0; i < layout.ghostTypes.length; i++) {
+                    targets[targetCount++] = layout.ghostRows[i] * layout.columnCount + layout.ghostColumns[i];
+                }
+            }
+            pinned = new int[targetCount][];
+            int pinnedCount = 0;
+            for (int i = 0; i < targetCount; i++) {
+                int target = targets[i];
+                if (target >= 0 && nodeOfCell[target] >= 0 && pinnedIndex[target] < 0) {
+                    pinned[pinnedCount] = new int[cellCount];
+                    Arrays.fill(pinned[pinnedCount], UNREACHABLE);
+                    search(target, UNREACHABLE - 1, pinned[pinnedCount], queue);
+                    pinnedIndex[target] = pinnedCount++;
+                }
+            }
+        }
+    }
+
+    // Number of steps from one cell to another, or UNREACHABLE. On mazes with
+    // bounded fields, an estimate for cells more than FIELD_RADIUS steps away.
+    int distance(int fromCell, int toCell) {
+        if (allPairs != null) {
+            int from = nodeOfCell[fromCell];
+            int to = nodeOfCell[toCell];
+            if (from < 0 || to < 0) {
+                return UNREACHABLE;
+            }
+            short distance = allPairs[to * nodeCount + from];
+            return distance < 0 ? UNREACHABLE : distance;
+        }
+        int pin = pinnedIndex[toCell];
+        if (pin >= 0) {
+            return pinned[pin][fromCell];
+        }
+        int set = (toCell * 0x9E3779B1 >>> 16) & (CACHE_SLOTS / CACHE_WAYS - 1);
+        for (int slot = set * CACHE_WAYS; slot < (set + 1) * CACHE_WAYS; slot++) {
+            Field field = cache.get(slot);
+            if (field == null) {
+                break; // Sets fill up in order, so the rest are empty too
+            }
+            // Optimistic read: only trusted if no rebuild started or finished meanwhile
+            long stamp = field.lock.tryOptimisticRead();
+            int distance = field.distances[fromCell];
+            if (field.target == toCell && field.lock.validate(stamp)) {
+                return beyond(distance, fromCell, toCell);
+            }
+        }
+        return beyond(rebuild(set, fromCell, toCell), fromCell, toCell);
+    }
+
+    // A cached field's distance, or the estimate for an open cell it does not
+    // reach if fields are bounded
+    private int beyond(int distance, int fromCell, int toCell) {
+        if (distance != UNREACHABLE || fieldRadius == UNREACHABLE - 1 || nodeOfCell[fromCell] < 0) {
+            return distance;
+        }
+        int columns = layout.columnCount;
+        int dc = Math.abs(fromCell % columns - toCell % columns);
+        return fieldRadius + Math.abs(fromCell / columns - toCell / columns) + Math.min(dc, columns - dc);
+    }
+
+    // Cache miss for mazes without an all-pairs table: build the target's field
+    // in an empty slot of its set, or else in place of the set's oldest field,
+    // and look the distance up. Searches in a set run one at a time.
+    private int rebuild(int set, int fromCell, int toCell) {
+        CacheSet cacheSet = sets[set];
+        synchronized (cacheSet) {
+            int first = set * CACHE_WAYS;
+            for (int slot = first; slot < first + CACHE_WAYS; slot++) {
+                Field field = cache.get(slot);
+                if (field == null) { // First use of the slot
+                    // Every step changes the row or the (wrapped) column by one, so a
+                    // bounded search reaches at most 2r(r + 1) + 1 cells
+                    int queueSize = nodeOfCell.length;
+                    if (fieldRadius == FIELD_RADIUS) {
+                        queueSize = Math.min(queueSize, 2 * FIELD_RADIUS * (FIELD_RADIUS + 1) + 1);
+                    }
+                    field = new Field(nodeOfCell.length, queueSize);
+                    field.target = toCell;
+                    field.reached = search(toCell, fieldRadius, field.distances, field.queue);
+                    cache.set(slot, field); // Publishes the finished field
+                    return field.distances[fromCell];
+                } else if (field.target == toCell) { // Another thread built it while we waited
+                    return field.distances[fromCell]; // Rebuilds need this lock, so the field is stable
+                }
+            }
+            Field field = cache.get(first + cacheSet.nextEvicted);
+            cacheSet.nextEvicted = (cacheSet.nextEvicted + 1) % CACHE_WAYS;
+            long stamp = field.lock.writeLock();
+            try {
+                for (int i = 0; i < field.reached; i++) {
+                    field.distances[field.queue[i]] = UNREACHABLE; // Forget the old target
+                }
+                field.target = toCell;
+                field.reached = search(toCell, fieldRadius, field.distances, field.queue);
+            } finally {
+                field.lock.unlockWrite(stamp);
+            }
+            return field.distances[fromCell];
+        }
+    }
+
+    // Breadth-first search from a cell out to the given number of steps, filling
+    // in the distance to it of every cell reached; the other entries must
+    // already be UNREACHABLE. Returns the number of cells reached, which are
+    // left in the queue.
+    private int search(int startCell, int radius, int[] distances, int[] queue) {
+        if (nodeOfCell[startCell] < 0) {
+            return 0; // Walls are unreachable from everywhere
+        }
+        int head = 0;
+        int tail = 0;
+        distances[startCell] = 0;
+        queue[tail++] = startCell;
+        byte[] exits = layout.exits;
+        int columns = layout.columnCount;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (distances[cell] == radius) {
+                continue; // Queued in distance order, but its neighbours are out of range
+            }
+            int next = distances[cell] + 1;
+            // Visit the neighbours through the tile's exits, tunnels included. An
+            // exit bit means the neighbour is open, so it is found by arithmetic
+            // here rather than through layout.neighbour(): this loop is the whole
+            // cost of a cache miss.
+            int mask = exits[cell];
+            if ((mask & MazeLayout.EXIT_UP) != 0) {
+                tail = visit(cell - columns, next, distances, queue, tail);
+            }
+            if ((mask & (MazeLayout.EXIT_LEFT | MazeLayout.EXIT_RIGHT)) != 0) {
+                int column = cell % columns;
+                if ((mask & MazeLayout.EXIT_LEFT) != 0) {
+                    tail = visit(column == 0 ? cell + columns - 1 : cell - 1, next, distances, queue, tail);
+                }
+                if ((mask & MazeLayout.EXIT_RIGHT) != 0) {
+                    tail = visit(column == columns - 1 ? cell - columns + 1 : cell + 1, next, distances, queue,
+                            tail);
+                }
+            }
+            if ((mask & MazeLayout.EXIT_DOWN) != 0) {
+                tail = visit(cell + columns, next, distances, queue, tail);
+            }
+        }
+        return tail;
+    }
+
+    // Queue an unvisited neighbour; returns the new queue tail
+    private int visit(int cell, int distance, int[] distances, int[] queue, int tail) {
+        if (distances[cell] == UNREACHABLE) {
+            distances[cell] = distance;
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+
+    // Open cell closest (by straight-line tile distance) to the given tile
+    private int nearestOpenCell(int row, int column) {
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int cell = 0; cell < nodeOfCell.length; cell++) {
+            if (nodeOfCell[cell] < 0) {
+                continue;
+            }
+            long dr = cell / layout.columnCount - row;
+            long dc = cell % layout.columnCount - column;
+            long distance = dr * dr + dc * dc;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = cell;
+            }
+        }
+        return best;
+    }
+}
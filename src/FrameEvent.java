@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// JDK Flight Recorder event emitted for every rendered frame while a recording
+// with this event enabled is running
+@Name("pacman.Frame")
+@Label("Game Frame")
+@Category("Pac-Man")
+@Description("Time spent drawing one frame")
+@StackTrace(false)
+public class FrameEvent extends jdk.jfr.Event {
+    @Label("Tick")
+    long tick;
+
+    @Label("Draw")
+    @Timespan(Timespan.NANOSECONDS)
+    long draw;
+}
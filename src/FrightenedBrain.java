@@ -0,0 +1,7 @@
+// Frightened strategy: wander at random, never turning back unless cornered
+public class FrightenedBrain implements GhostBrain {
+    @Override
+    public char decide(Simulation sim, int ghost) {
+        return GhostBrain.randomExit(sim, ghost);
+    }
+}
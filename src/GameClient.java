@@ -0,0 +1,282 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+
+// Stand-in client for a GameServer. It joins a session, keeps a mirror of the
+// game up to date from the server's snapshots (the mirror is a Simulation that
+// is never stepped, so GameRenderer can draw it as is) and sends input. It can
+// show the game in a window and be played from the keyboard, or run many
+// headless bots at once to load-test a server.
+//
+// Usage: java GameClient [--host=H] [--port=N] [--session=N]
+//                        [--role=pacman|ghost1..ghostN|spectator]
+//                        [--bots=N] [--seconds=N]
+// With --bots, N WanderBots each play Pac-Man in their own session, starting at
+// --session, and report snapshot sizes and arrival jitter every 5 seconds.
+public class GameClient implements AutoCloseable {
+    final SocketChannel channel; // Connection to the server
+    final int sessionId; // Session joined
+    final byte role; // Role granted by the server
+    final Simulation mirror; // Local copy of the game, updated from snapshots
+    long bytesReceived = 0; // Snapshot bytes received so far
+    long snapshots = 0; // Snapshots received so far
+
+    private ByteBuffer in = ByteBuffer.allocate(16 * 1024); // Received bytes, in read mode
+    private final ByteBuffer out = ByteBuffer.allocate(Protocol.INPUT_SIZE); // Outgoing input message
+
+    // Constructor to connect, join a session and build the mirror from the WELCOME
+    GameClient(String host, int port, int session, byte requestedRole) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        in.flip(); // Nothing received yet
+        ByteBuffer join = ByteBuffer.allocate(Protocol.JOIN_SIZE);
+        join.put(Protocol.JOIN);
+        join.putInt(session);
+        join.put(requestedRole);
+        join.flip();
+        while (join.hasRemaining()) {
+            channel.write(join);
+        }
+
+        ByteBuffer welcome = nextMessage();
+        if (welcome == null || welcome.get() != Protocol.WELCOME) {
+            throw new IOException("Server did not welcome the client");
+        }
+        sessionId = welcome.getInt();
+        role = welcome.get();
+        int tileSize = (int) Replay.getVarint(welcome);
+        Replay.getVarint(welcome); // Layout size; the layout knows its own length
+        mirror = new Simulation(new MazeLayout(welcome), tileSize, 0);
+        Protocol.applyFull(welcome, mirror);
+    }
+
+    // Wait for the next snapshot and apply it to the mirror; returns false once
+    // the server has closed the connection
+    boolean receive() throws IOException {
+        ByteBuffer message = nextMessage();
+        if (message == null) {
+            return false;
+        }
+        bytesReceived += message.remaining();
+        snapshots++;
+        byte type = message.get();
+        synchronized (mirror) { // The window may be drawing the mirror
+            if (type == Protocol.DELTA) {
+                Protocol.applyDelta(message, mirror);
+            } else if (type == Protocol.FULL) {
+                Protocol.applyFull(message, mirror);
+            } else {
+                throw new IOException("Unexpected message type " + type);
+            }
+        }
+        return true;
+    }
+
+    // Send an input (U, D, L, R or K) to the server
+    synchronized void send(char input) throws IOException {
+        out.clear();
+        out.put(Protocol.INPUT);
+        out.put((byte) input);
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    // Read the next length-prefixed message; the returned buffer holds its bytes
+    // (type first) and is only valid until the next call. Returns null at the end
+    // of the stream.
+    private ByteBuffer nextMessage() throws IOException {
+        while (true) {
+            // Try to decode the varint length prefix from what has arrived so far
+            int length = 0;
+            int header = 0;
+            boolean complete = false;
+            while (header < in.remaining() && header < 5) {
+                byte b = in.get(in.position() + header);
+                length |= (b & 0x7F) << (7 * header);
+                header++;
+                if ((b & 0x80) == 0) {
+                    complete = true;
+                    break;
+                }
+            }
+            if (complete && in.remaining() >= header + length) {
+                ByteBuffer message = in.slice();
+                message.position(header);
+                message.limit(header + length);
+                in.position(in.position() + header + length);
+                return message;
+            }
+            if (complete && header + length > in.capacity()) {
+                // A message larger than the buffer (a WELCOME for a big map)
+                ByteBuffer bigger = ByteBuffer.allocate(header + length);
+                bigger.put(in);
+                bigger.flip();
+                in = bigger;
+            }
+            in.compact();
+            int read = channel.read(in);
+            in.flip();
+            if (read < 0) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Show the mirrored game in a window and send arrow keys (any other key is K)
+    static void show(GameClient client) {
+        GameRenderer renderer = new GameRenderer(client.mirror.tileSize);
+        JPanel panel = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                synchronized (client.mirror) {
+                    renderer.draw(g, client.mirror);
+                }
+            }
+        };
+        panel.setPreferredSize(new Dimension(client.mirror.boardWidth, client.mirror.boardHeight));
+        panel.setBackground(Color.BLACK);
+        panel.setFocusable(true);
+        panel.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyReleased(KeyEvent e) {
+                char input = Simulation.ANY_KEY;
+                if (e.getKeyCode() == KeyEvent.VK_UP) {
+                    input = 'U';
+                } else if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+                    input = 'D';
+                } else if (e.getKeyCode() == KeyEvent.VK_LEFT) {
+                    input = 'L';
+                } else if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
+                    input = 'R';
+                }
+                try {
+                    client.send(input);
+                } catch (IOException ex) {
+                    System.err.println("Could not send input: " + ex);
+                }
+            }
+        });
+
+        String roleName = client.role == Protocol.PACMAN ? "Pac-Man"
+                : client.role == Protocol.SPECTATOR ? "spectator" : "ghost " + client.role;
+        JFrame frame = new JFrame("Pac Man (session " + client.sessionId + ", " + roleName + ")");
+        frame.setResizable(false);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.add(panel);
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+        panel.requestFocus();
+
+        // Redraw whenever a snapshot arrives
+        Thread reader = new Thread(() -> {
+            try {
+                while (client.receive()) {
+                    panel.repaint();
+                }
+                System.out.println("Server closed the connection");
+            } catch (IOException e) {
+                System.err.println("Connection lost: " + e);
+            }
+        }, "client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Run headless bots, one per session, and report what they receive
+    static void runBots(String host, int port, int firstSession, int bots, int seconds) throws Exception {
+        AtomicLong totalSnapshots = new AtomicLong();
+        AtomicLong totalBytes = new AtomicLong();
+        LatencyHistogram intervals = new LatencyHistogram(); // Time between snapshots
+        for (int i = 0; i < bots; i++) {
+            int session = firstSession + i;
+            Thread bot = new Thread(() -> {
+                try (GameClient client = new GameClient(host, port, session, Protocol.PACMAN)) {
+                    BatchRunner.WanderBot brain = new BatchRunner.WanderBot(session);
+                    long last = System.nanoTime();
+                    while (client.receive()) {
+                        long now = System.nanoTime();
+                        intervals.record(now - last);
+                        last = now;
+                        // A finished game sends nothing until someone presses a key
+                        char input = client.mirror.gameOver ? Simulation.ANY_KEY : brain.decide(client.mirror);
+                        if (input != Simulation.NO_INPUT) {
+                            client.send(input);
+                        }
+                        totalSnapshots.incrementAndGet();
+                        totalBytes.addAndGet(client.bytesReceived);
+                        client.bytesReceived = 0;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Bot in session " + session + " failed: " + e);
+                }
+            }, "bot-" + session);
+            bot.setDaemon(true);
+            bot.start();
+        }
+
+        long end = System.currentTimeMillis() + seconds * 1000L;
+        while (System.currentTimeMillis() < end) {
+            Thread.sleep(Math.min(5000, Math.max(1, end - System.currentTimeMillis())));
+            long snapshots = totalSnapshots.getAndSet(0);
+            long bytes = totalBytes.getAndSet(0);
+            System.out.printf("bots %d, snapshots %d, %.1f bytes/snapshot, interval p50 %.1f ms, p99 %.1f ms%n",
+                    bots, snapshots, snapshots == 0 ? 0.0 : (double) bytes / snapshots,
+                    intervals.percentile(50) / 1e6, intervals.percentile(99) / 1e6);
+            intervals.reset();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = GameServer.DEFAULT_PORT;
+        int session = 0;
+        byte role = Protocol.PACMAN;
+        int bots = 0;
+        int seconds = 60;
+        for (String arg : args) {
+            if (arg.startsWith("--host=")) {
+                host = arg.substring("--host=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--session=")) {
+                session = Integer.parseInt(arg.substring("--session=".length()));
+            } else if (arg.startsWith("--role=")) {
+                String name = arg.substring("--role=".length());
+                if (name.equals("spectator")) {
+                    role = Protocol.SPECTATOR;
+                } else if (name.startsWith("ghost")) {
+                    role = Byte.parseByte(name.substring("ghost".length()));
+                } else {
+                    role = Protocol.PACMAN;
+                }
+            } else if (arg.startsWith("--bots=")) {
+                bots = Integer.parseInt(arg.substring("--bots=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Integer.parseInt(arg.substring("--seconds=".length()));
+            }
+        }
+        if (bots > 0) {
+            runBots(host, port, session, bots, seconds);
+            return;
+        }
+        show(new GameClient(host, port, session, role));
+    }
+}
@@ -0,0 +1,287 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Draws a Simulation onto any Graphics target (a Swing panel, an offscreen image, ...).
+// The walls never change after loadMap(), so they are drawn once into a cached
+// background image; the food dots live in a second cached layer that is patched
+// tile by tile as dots are eaten. Only actors, the cherry and the HUD are drawn
+// from scratch every frame.
+public class GameRenderer {
+    static final Font HUD_FONT = new Font("Arial", Font.PLAIN, 18); // Font for score and lives
+    static final Font DEBUG_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12); // Font for the debug overlay
+
+    private SpriteAtlas sprites; // Pre-scaled sprites, shared with other renderers of the same tile size
+
+    // Cached static layers
+    private BufferedImage wallLayer; // Black background with every wall drawn on it
+    private MazeLayout wallLayerLayout; // Layout the wall layer was drawn for
+    private BufferedImage foodLayer; // Transparent image holding the remaining food dots
+    private Graphics2D foodGraphics; // Graphics kept open on the food layer for patching
+    private TileGrid foodLayerGrid; // Grid the food layer mirrors
+    private int foodLayerGeneration = -1; // Grid generation the food layer was drawn for
+    private int foodLayerEaten = 0; // Number of eaten dots already cleared from the layer
+
+    private final char[] hudText = new char[64]; // Reused buffer for the HUD text
+    volatile boolean showOverlay = false; // Draw the debug overlay (needs the simulation's TickStats); set on the event thread
+
+    // Constructor to fetch the sprites for the given tile size, loading them if
+    // no other renderer has yet
+    GameRenderer(int tileSize) {
+        sprites = SpriteAtlas.forTileSize(tileSize);
+    }
+
+    // Method to draw all game elements on the screen as of the last tick
+    public void draw(Graphics g, Simulation sim) {
+        draw(g, sim, 1f);
+    }
+
+    // Draw the game with actors placed a fraction alpha (0..1) of the way from
+    // their previous tick's position to their current one
+    public void draw(Graphics g, Simulation sim, float alpha) {
+        TickStats stats = sim.stats;
+        long start = stats != null ? System.nanoTime() : 0;
+        if (sprites.tileSize != sim.tileSize) {
+            sprites = SpriteAtlas.forTileSize(sim.tileSize);
+        }
+        // Blit the cached wall and food layers, bringing them up to date first
+        updateWallLayer(sim);
+        updateFoodLayer(sim.grid, sim.layout);
+        g.drawImage(wallLayer, 0, 0, null);
+        g.drawImage(foodLayer, 0, 0, null);
+
+        // Draw cherry if it exists
+        Block cherry = sim.cherry;
+        if (sim.cherryActive) {
+            sprites.draw(g, SpriteAtlas.CHERRY, cherry.x, cherry.y);
+        }
+
+        // Draw all ghosts
+        int tileSize = sim.tileSize;
+        Ghosts ghosts = sim.ghosts;
+        for (int i = 0; i < ghosts.count; i++) {
+            int x = lerp(ghosts.prevX[i], ghosts.x[i], alpha, tileSize);
+            int y = lerp(ghosts.prevY[i], ghosts.y[i], alpha, tileSize);
+            if (ghosts.state[i] == Ghosts.EATEN) {
+                drawEyes(g, x, y, tileSize); // Only the eyes head back to the spawn tile
+            } else if (ghosts.state[i] == Ghosts.FRIGHTENED) {
+                sprites.draw(g, SpriteAtlas.SCARED_GHOST, x, y);
+            } else {
+                sprites.draw(g, ghostSprite(ghosts.type[i]), x, y);
+            }
+        }
+
+        // Draw each Pac-Man with the image matching its direction
+        for (Block pacman : sim.pacmen) {
+            sprites.draw(g, pacmanSprite(pacman.direction), lerp(pacman.prevX, pacman.x, alpha, tileSize),
+                    lerp(pacman.prevY, pacman.y, alpha, tileSize));
+        }
+
+        // Draw score and lives (or game over message), formatted into a reused buffer
+        int length;
+        if (sim.gameOver) {
+            length = appendText(hudText, 0, "Game Over: ");
+            length = appendNumber(hudText, length, sim.score);
+        } else {
+            length = appendText(hudText, 0, "x");
+            length = appendNumber(hudText, length, sim.lives);
+            length = appendText(hudText, length, " Score: ");
+            length = appendNumber(hudText, length, sim.score);
+        }
+        g.setColor(Color.WHITE);
+        g.setFont(HUD_FONT);
+        g.drawChars(hudText, 0, length, tileSize / 2, tileSize / 2);
+
+        if (stats != null) {
+            if (showOverlay) {
+                drawOverlay(g, stats, sim.boardHeight);
+            }
+            stats.recordFrame(sim.tick, System.nanoTime() - start);
+        }
+    }
+
+    // Draw the debug overlay in the bottom-left corner: tick and draw times from
+    // the last second, frame rate and the game thread's allocation rate
+    private void drawOverlay(Graphics g, TickStats stats, int boardHeight) {
+        g.setColor(Color.BLACK);
+        g.fillRect(0, boardHeight - 52, 220, 52);
+        g.setColor(Color.GREEN);
+        g.setFont(DEBUG_FONT);
+
+        int length = appendText(hudText, 0, "tick p50 ");
+        length = appendNumber(hudText, length, stats.sampleTickP50 / 1000);
+        length = appendText(hudText, length, "us p99 ");
+        length = appendNumber(hudText, length, stats.sampleTickP99 / 1000);
+        length = appendText(hudText, length, "us");
+        g.drawChars(hudText, 0, length, 6, boardHeight - 38);
+
+        length = appendText(hudText, 0, "draw p99 ");
+        length = appendNumber(hudText, length, stats.sampleDrawP99 / 1000);
+        length = appendText(hudText, length, "us fps ");
+        length = appendNumber(hudText, length, Math.round(stats.sampleFps));
+        g.drawChars(hudText, 0, length, 6, boardHeight - 22);
+
+        length = appendText(hudText, 0, "alloc ");
+        if (stats.sampleAllocationRate < 0) {
+            length = appendText(hudText, length, "n/a");
+        } else {
+            length = appendNumber(hudText, length, stats.sampleAllocationRate / 1024);
+            length = appendText(hudText, length, " KB/s");
+        }
+        g.drawChars(hudText, 0, length, 6, boardHeight - 6);
+    }
+
+    // Copy text into a buffer at the given position and return the new length
+    static int appendText(char[] buffer, int length, String text) {
+        text.getChars(0, text.length(), buffer, length);
+        return length + text.length();
+    }
+
+    // Write a number's decimal digits into a buffer and return the new length
+    static int appendNumber(char[] buffer, int length, long number) {
+        if (number < 0) {
+            buffer[length++] = '-';
+            number = -number;
+        }
+        int start = length;
+        do {
+            buffer[length++] = (char) ('0' + number % 10);
+            number /= 10;
+        } while (number > 0);
+        // The digits were written least significant first, so reverse them
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+        return length;
+    }
+
+    // Interpolate a coordinate between ticks; jumps of more than a tile (respawns,
+    // level reloads) are drawn at the new position straight away
+    private static int lerp(int previous, int current, float alpha, int tileSize) {
+        int delta = current - previous;
+        if (delta > tileSize || delta < -tileSize) {
+            return current;
+        }
+        return previous + Math.round(delta * alpha);
+    }
+
+    // Draw the walls once into a background image whenever a new layout is shown
+    private void updateWallLayer(Simulation sim) {
+        if (wallLayer != null && wallLayerLayout == sim.layout && wallLayer.getWidth() == sim.boardWidth
+                && wallLayer.getHeight() == sim.boardHeight) {
+            return;
+        }
+        wallLayer = createLayer(sim.boardWidth, sim.boardHeight, Transparency.OPAQUE);
+        wallLayerLayout = sim.layout;
+        Graphics2D g = wallLayer.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, sim.boardWidth, sim.boardHeight);
+        TileGrid grid = sim.grid;
+        int tileSize = sim.tileSize;
+        for (int r = 0; r < sim.rowCount; r++) {
+            for (int c = 0; c < sim.columnCount; c++) {
+                if (grid.isWall(r, c)) {
+                    sprites.draw(g, SpriteAtlas.WALL, c * tileSize, r * tileSize);
+                }
+            }
+        }
+        g.dispose();
+    }
+
+    // Keep the food layer in step with the grid: redraw it after the board is
+    // reloaded, otherwise just clear the dots eaten since the last frame. Power
+    // pellets fill their whole tile, so a patch clears the tile rather than the dot.
+    private void updateFoodLayer(TileGrid grid, MazeLayout layout) {
+        int width = grid.columnCount * grid.tileSize;
+        int height = grid.rowCount * grid.tileSize;
+        if (foodLayer == null || foodLayer.getWidth() != width || foodLayer.getHeight() != height) {
+            if (foodGraphics != null) {
+                foodGraphics.dispose();
+            }
+            foodLayer = createLayer(width, height, Transparency.TRANSLUCENT);
+            foodGraphics = foodLayer.createGraphics();
+            foodLayerGrid = null; // Force a full redraw
+        }
+        if (foodLayerGrid != grid || foodLayerGeneration != grid.generation) {
+            // Full redraw: wipe the layer and draw every remaining dot
+            foodGraphics.setComposite(AlphaComposite.Clear);
+            foodGraphics.fillRect(0, 0, width, height);
+            foodGraphics.setComposite(AlphaComposite.SrcOver);
+            foodGraphics.setColor(Color.WHITE);
+            for (int r = 0; r < grid.rowCount; r++) {
+                for (int c = 0; c < grid.columnCount; c++) {
+                    if (!grid.hasFood(r, c)) {
+                        continue;
+                    }
+                    if (layout.isPower(r * grid.columnCount + c)) {
+                        sprites.draw(foodGraphics, SpriteAtlas.POWER_FOOD, c * grid.tileSize, r * grid.tileSize);
+                    } else {
+                        foodGraphics.fillRect(grid.dotX(c), grid.dotY(r), TileGrid.DOT_SIZE, TileGrid.DOT_SIZE);
+                    }
+                }
+            }
+            foodLayerGrid = grid;
+            foodLayerGeneration = grid.generation;
+            foodLayerEaten = grid.eatenCount;
+            return;
+        }
+        if (foodLayerEaten == grid.eatenCount) {
+            return; // Nothing eaten since the last frame
+        }
+        // Incremental patch: clear just the dots eaten since the last frame
+        foodGraphics.setComposite(AlphaComposite.Clear);
+        for (int i = foodLayerEaten; i < grid.eatenCount; i++) {
+            int index = grid.eatenCells[i];
+            int r = index / grid.columnCount;
+            int c = index % grid.columnCount;
+            foodGraphics.fillRect(c * grid.tileSize, r * grid.tileSize, grid.tileSize, grid.tileSize);
+        }
+        foodGraphics.setComposite(AlphaComposite.SrcOver);
+        foodLayerEaten = grid.eatenCount;
+    }
+
+    // Draw the eyes of a ghost that has been eaten
+    private static void drawEyes(Graphics g, int x, int y, int tileSize) {
+        int eye = tileSize / 4;
+        g.setColor(Color.WHITE);
+        g.fillOval(x + tileSize / 4 - eye / 2, y + tileSize / 3, eye, eye);
+        g.fillOval(x + 3 * tileSize / 4 - eye / 2, y + tileSize / 3, eye, eye);
+    }
+
+    // Create an image in the screen's native format so blits can be accelerated;
+    // without a display (benchmarks, servers) fall back to a plain BufferedImage
+    static BufferedImage createLayer(int width, int height, int transparency) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration();
+            return config.createCompatibleImage(width, height, transparency);
+        }
+        int type = transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        return new BufferedImage(width, height, type);
+    }
+
+    // Pick Pac-Man's sprite to match its direction
+    private static int pacmanSprite(char direction) {
+        if (direction == 'U') {
+            return SpriteAtlas.PACMAN_UP;
+        } else if (direction == 'D') {
+            return SpriteAtlas.PACMAN_DOWN;
+        } else if (direction == 'L') {
+            return SpriteAtlas.PACMAN_LEFT;
+        }
+        return SpriteAtlas.PACMAN_RIGHT;
+    }
+
+    // Pick a ghost's sprite from its tile map character
+    private static int ghostSprite(char type) {
+        if (type == 'b') {
+            return SpriteAtlas.BLUE_GHOST;
+        } else if (type == 'o') {
+            return SpriteAtlas.ORANGE_GHOST;
+        } else if (type == 'p') {
+            return SpriteAtlas.PINK_GHOST;
+        }
+        return SpriteAtlas.RED_GHOST;
+    }
+}
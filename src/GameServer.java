@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
+
+// Authoritative multiplayer server: hosts any number of game sessions, each
+// running the Simulation rules at a fixed tick rate, and streams compact binary
+// snapshots (see Protocol) to the clients playing or watching them. Sessions are
+// spread over a few ServerLoops, each a single thread multiplexing its sockets
+// over one NIO Selector, so thousands of sessions need only as many threads as
+// there are cores.
+//
+// Usage: java GameServer [--port=N] [--loops=N] [--tick=MS] [--levels=DIR]
+// A session is created when the first client joins it and closed when the last
+// one leaves. With --levels, session n plays level n (mod the number of levels).
+public class GameServer implements AutoCloseable {
+    static final int DEFAULT_PORT = 7777; // Port the server listens on by default
+    static final int SEND_BUFFER_SIZE = 16 * 1024; // Smallest per-client send buffer
+
+    final int tickMillis; // Length of a tick in milliseconds
+    final int tileSize; // Tile size of every session
+    final ServerLoop[] loops; // Event loops, each owning a share of the sessions
+    private final LevelLibrary levels; // Levels for the sessions, or null for the classic map
+    private final MazeLayout classicLayout; // Layout of the classic map, shared by every session
+    private final ServerSocketChannel serverChannel; // Listening socket
+    private final Thread[] threads; // Threads running the loops
+
+    // Constructor to bind the listening socket and start the loops
+    GameServer(int port, int loopCount, int tickMillis, LevelLibrary levels) throws IOException {
+        this.tickMillis = tickMillis;
+        this.tileSize = 32;
+        this.levels = levels;
+        this.classicLayout = new MazeLayout(Simulation.CLASSIC_MAP);
+        if (levels != null) {
+            levels.loadAll(); // Sessions are created on the loop threads, which must not wait on disk
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+
+        loops = new ServerLoop[loopCount];
+        threads = new Thread[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new ServerLoop(this);
+        }
+        // The first loop accepts new clients and hands them to their session's loop
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        for (int i = 0; i < loopCount; i++) {
+            threads[i] = new Thread(loops[i], "server-loop-" + i);
+            threads[i].start();
+        }
+    }
+
+    // Port the server is listening on
+    int port() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    // Loop that owns the session with the given id
+    ServerLoop loopFor(int sessionId) {
+        return loops[Math.floorMod(sessionId, loops.length)];
+    }
+
+    // Start a new game for a session; called on the session's loop thread
+    GameSession createSession(int id) throws IOException {
+        MazeLayout layout = levels == null ? classicLayout : levels.level(Math.floorMod(id, levels.size()));
+        return new GameSession(id, layout, tileSize, System.nanoTime() ^ id);
+    }
+
+    // One-line summary of the load and tick latency of every loop since the last call
+    String report() {
+        int sessions = 0;
+        int connections = 0;
+        long p50 = 0;
+        long p99 = 0;
+        long max = 0;
+        for (ServerLoop loop : loops) {
+            sessions += loop.sessionCount;
+            connections += loop.connectionCount;
+            p50 = Math.max(p50, loop.tickTimes.percentile(50));
+            p99 = Math.max(p99, loop.tickTimes.percentile(99));
+            max = Math.max(max, loop.tickTimes.max());
+            loop.tickTimes.reset();
+        }
+        return String.format("sessions %d, clients %d, tick p50 %d us, p99 %d us, max %d us",
+                sessions, connections, p50 / 1000, p99 / 1000, max / 1000);
+    }
+
+    // Stop the loops and close every socket
+    @Override
+    public void close() throws IOException {
+        for (ServerLoop loop : loops) {
+            loop.stop();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        serverChannel.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = DEFAULT_PORT;
+        int loopCount = Runtime.getRuntime().availableProcessors();
+        int tickMillis = Simulation.TICK_MILLIS;
+        LevelLibrary levels = null;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--loops=")) {
+                loopCount = Integer.parseInt(arg.substring("--loops=".length()));
+            } else if (arg.startsWith("--tick=")) {
+                tickMillis = Integer.parseInt(arg.substring("--tick=".length()));
+            } else if (arg.startsWith("--levels=")) {
+                levels = new LevelLibrary(Paths.get(arg.substring("--levels=".length())));
+            }
+        }
+        GameServer server = new GameServer(port, loopCount, tickMillis, levels);
+        System.out.println("Listening on port " + server.port() + " with " + loopCount + " loops");
+        while (true) {
+            Thread.sleep(5000);
+            System.out.println(server.report());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// One game hosted by a GameServer: an authoritative Simulation plus the clients
+// connected to it. Players may control Pac-Man or any ghost; everyone else
+// spectates. Inputs that arrive between ticks are batched and applied on the
+// next tick, after which one DELTA snapshot is encoded and copied to every
+// client. A session is only ever touched by the ServerLoop that owns it.
+public class GameSession {
+    final int id; // Session id chosen by the clients
+    final Simulation sim; // Authoritative game state
+    final RemoteBrain brain; // Ghost strategy honouring ghost players
+    final List<ServerLoop.Connection> connections = new ArrayList<ServerLoop.Connection>(); // Joined clients
+    ServerLoop.Connection pacmanPlayer; // Client controlling Pac-Man, or null
+    final ServerLoop.Connection[] ghostPlayers; // Client controlling each ghost, or null
+    char pendingInput = Simulation.NO_INPUT; // Pac-Man's latest input, applied on the next tick
+
+    private final Protocol.Baseline baseline; // State the next DELTA is encoded against
+    private final byte[] deltaBody; // Encoded DELTA message body of the last tick
+    private final ByteBuffer deltaBuffer; // Wraps deltaBody for encoding
+    private int deltaLength = 0; // Length of the encoded DELTA body
+    private final byte[] fullBody; // Encoded FULL message body, built on demand
+    private final ByteBuffer fullBuffer; // Wraps fullBody for encoding
+    private int fullLength = 0; // Length of the encoded FULL body
+    private long fullTick = -1; // Tick fullBody was encoded on
+
+    // Constructor to start a new game on the given layout
+    GameSession(int id, MazeLayout layout, int tileSize, long seed) {
+        this.id = id;
+        this.sim = new Simulation(layout, tileSize, seed);
+        this.brain = new RemoteBrain(sim.ghostBrain, layout.ghostTypes.length);
+        sim.ghostBrain = brain;
+        this.ghostPlayers = new ServerLoop.Connection[layout.ghostTypes.length];
+        this.baseline = new Protocol.Baseline(sim);
+        this.deltaBody = new byte[1 + Protocol.maxDeltaSize(sim)];
+        this.deltaBuffer = ByteBuffer.wrap(deltaBody);
+        this.fullBody = new byte[1 + Protocol.maxFullSize(sim)];
+        this.fullBuffer = ByteBuffer.wrap(fullBody);
+    }
+
+    // Add a client asking for a role and return the role it was granted: the one
+    // it asked for if that is free, otherwise spectator
+    byte join(ServerLoop.Connection connection, byte role) {
+        connections.add(connection);
+        if (role == Protocol.PACMAN && pacmanPlayer == null) {
+            pacmanPlayer = connection;
+            return role;
+        }
+        int ghost = role - 1;
+        if (ghost >= 0 && ghost < ghostPlayers.length && ghostPlayers[ghost] == null) {
+            ghostPlayers[ghost] = connection;
+            brain.setControlled(ghost, true);
+            return role;
+        }
+        return Protocol.SPECTATOR;
+    }
+
+    // Remove a client, handing its ghost (if any) back to the computer
+    void leave(ServerLoop.Connection connection) {
+        connections.remove(connection);
+        if (pacmanPlayer == connection) {
+            pacmanPlayer = null;
+        }
+        for (int i = 0; i < ghostPlayers.length; i++) {
+            if (ghostPlayers[i] == connection) {
+                ghostPlayers[i] = null;
+                brain.setControlled(i, false);
+            }
+        }
+    }
+
+    // Apply an input from a client according to its role; the last input before
+    // a tick wins
+    void input(ServerLoop.Connection connection, char input) {
+        boolean direction = input == 'U' || input == 'D' || input == 'L' || input == 'R';
+        if (connection == pacmanPlayer && (direction || input == Simulation.ANY_KEY)) {
+            pendingInput = input;
+            return;
+        }
+        int ghost = connection.role - 1;
+        if (direction && ghost >= 0 && ghost < ghostPlayers.length && ghostPlayers[ghost] == connection) {
+            brain.wanted[ghost] = input;
+        }
+    }
+
+    // Advance the game by one tick and encode the DELTA snapshot for it; returns
+    // false if nothing happened (the game is over and waiting for a key)
+    boolean tick() {
+        sim.step(pendingInput);
+        pendingInput = Simulation.NO_INPUT;
+        if (sim.tick == baseline.tick) {
+            return false;
+        }
+        deltaBuffer.clear();
+        deltaBuffer.put(Protocol.DELTA);
+        Protocol.putDelta(deltaBuffer, sim, baseline);
+        deltaLength = deltaBuffer.position();
+        return true;
+    }
+
+    // Append the last tick's DELTA message to a client's send buffer; returns false
+    // if it does not fit
+    boolean putDelta(ByteBuffer out) {
+        if (out.remaining() < 5 + deltaLength) {
+            return false;
+        }
+        Replay.putVarint(out, deltaLength);
+        out.put(deltaBody, 0, deltaLength);
+        return true;
+    }
+
+    // Append a FULL message of the current state to a client's send buffer;
+    // returns false if it does not fit
+    boolean putFull(ByteBuffer out) {
+        if (fullTick != sim.tick) {
+            fullBuffer.clear();
+            fullBuffer.put(Protocol.FULL);
+            Protocol.putFull(fullBuffer, sim);
+            fullLength = fullBuffer.position();
+            fullTick = sim.tick;
+        }
+        if (out.remaining() < 5 + fullLength) {
+            return false;
+        }
+        Replay.putVarint(out, fullLength);
+        out.put(fullBody, 0, fullLength);
+        return true;
+    }
+
+    // Size of the WELCOME message, for sizing a client's send buffer
+    int welcomeSize() {
+        return 5 + 1 + 4 + 1 + 5 + 5 + sim.layout.binarySize() + Protocol.maxFullSize(sim);
+    }
+
+    // Append the WELCOME message for a client that was granted the given role
+    void putWelcome(ByteBuffer out, byte role) {
+        ByteBuffer body = ByteBuffer.allocate(welcomeSize());
+        body.put(Protocol.WELCOME);
+        body.putInt(id);
+        body.put(role);
+        Replay.putVarint(body, sim.tileSize);
+        Replay.putVarint(body, sim.layout.binarySize());
+        sim.layout.write(body);
+        Protocol.putFull(body, sim);
+        body.flip();
+        Replay.putVarint(out, body.remaining());
+        out.put(body);
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Procedurally generated levels, one per seed. Levels are generated on a
+// background thread ahead of use and the most recently used ones are kept in a
+// small LRU cache, so a game moving on to its next level finds the layout ready
+// instead of waiting for the generator on the game loop.
+public class GeneratedLevels implements AutoCloseable {
+    static final int CACHE_SIZE = 8; // Layouts kept (finished or in progress), by seed
+
+    final MazeGenerator generator; // Generator for every level
+    final AtomicInteger ready = new AtomicInteger(); // Levels that were ready when asked for
+    final AtomicInteger stalls = new AtomicInteger(); // Levels the caller had to wait for
+
+    private final ExecutorService executor; // Background generator thread
+    // Layouts by seed, least recently used first
+    private final LinkedHashMap<Long, CompletableFuture<MazeLayout>> cache =
+            new LinkedHashMap<Long, CompletableFuture<MazeLayout>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, CompletableFuture<MazeLayout>> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    // Constructor to start the background generator thread
+    GeneratedLevels(MazeGenerator generator) {
+        this.generator = generator;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "level-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Start generating the level for a seed unless it is cached already
+    synchronized CompletableFuture<MazeLayout> prefetch(long seed) {
+        CompletableFuture<MazeLayout> layout = cache.get(seed);
+        if (layout == null) {
+            layout = CompletableFuture.supplyAsync(() -> generator.layout(seed), executor);
+            cache.put(seed, layout);
+        }
+        return layout;
+    }
+
+    // Layout for a seed, waiting for it if it is not ready yet
+    MazeLayout level(long seed) {
+        CompletableFuture<MazeLayout> layout = prefetch(seed);
+        (layout.isDone() ? ready : stalls).incrementAndGet();
+        return layout.join();
+    }
+
+    // Endless sequence of levels with seeds following the given one; used as a
+    // Simulation's next-level supplier. The level after the one handed out is
+    // always being generated in the background.
+    Supplier<MazeLayout> sequence(long current) {
+        long[] next = { current + 1 };
+        prefetch(next[0]);
+        return () -> {
+            MazeLayout layout = level(next[0]);
+            next[0]++;
+            prefetch(next[0]);
+            return layout;
+        };
+    }
+
+    // One-line summary of how often a level was ready in time
+    String report() {
+        return String.format("Generated levels: %d ready in time, %d waited for", ready.get(), stalls.get());
+    }
+
+    // Stop the background thread
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,60 @@
+// Strategy that steers a ghost. decide() is called whenever a ghost stands exactly
+// on a tile and returns the direction it should leave that tile in. With a ghost
+// pool set it is called from several threads at once, one ghost per call.
+public interface GhostBrain {
+    char[] EXIT_ORDER = { 'U', 'L', 'D', 'R' }; // Tie-break order when exits are equally good
+
+    // Return the direction (U, D, L, R) ghost i should take from its current tile
+    char decide(Simulation sim, int ghost);
+
+    // Pick the exit that brings ghost i closest to the target cell by path
+    // distance; a ghost never turns back unless it is in a dead end
+    static char steerTowards(Simulation sim, int ghost, int targetCell) {
+        DistanceFields distances = sim.layout.distances();
+        int cell = sim.ghostCell(ghost);
+        char reverse = reverse(sim.ghosts.direction[ghost]);
+        char best = reverse;
+        int bestDistance = DistanceFields.UNREACHABLE;
+        for (char exit : EXIT_ORDER) {
+            if (exit == reverse) {
+                continue;
+            }
+            int next = sim.neighbourCell(cell, exit);
+            if (next < 0) {
+                continue; // Wall or edge of the board
+            }
+            int distance = distances.distance(next, targetCell);
+            if (best == reverse || distance < bestDistance) {
+                best = exit;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    // Pick a random exit other than turning back, unless it is a dead end
+    static char randomExit(Simulation sim, int ghost) {
+        int cell = sim.ghostCell(ghost);
+        char reverse = reverse(sim.ghosts.direction[ghost]);
+        int start = sim.ghostRandom(ghost, 4);
+        for (int i = 0; i < 4; i++) {
+            char exit = EXIT_ORDER[(start + i) & 3];
+            if (exit != reverse && sim.neighbourCell(cell, exit) >= 0) {
+                return exit;
+            }
+        }
+        return reverse;
+    }
+
+    // Opposite of a direction
+    static char reverse(char direction) {
+        if (direction == 'U') {
+            return 'D';
+        } else if (direction == 'D') {
+            return 'U';
+        } else if (direction == 'L') {
+            return 'R';
+        }
+        return 'L';
+    }
+}
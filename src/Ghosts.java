@@ -0,0 +1,82 @@
+// Struct-of-arrays storage for the ghosts: one primitive array per field instead
+// of one Block object per ghost, so updating them walks flat arrays and reloading
+// the board reuses the same storage instead of allocating new objects
+public class Ghosts {
+    // Ghost states
+    static final byte NORMAL = 0; // Steered by the game's ghost brain; deadly to Pac-Man
+    static final byte FRIGHTENED = 1; // After a power pellet: wanders and can be eaten
+    static final byte EATEN = 2; // Eaten by Pac-Man: heads back to its spawn tile, harmless
+    static final byte HOUSE = 3; // Waiting on its spawn tile to be released
+
+    final int size; // Width and height of every ghost (one tile)
+    int count = 0; // Number of ghosts in use
+
+    char[] type; // Tile map character of each ghost (b, o, p, r)
+    int[] x; // X-coordinate of each ghost
+    int[] y; // Y-coordinate of each ghost
+    int[] prevX; // X-coordinate at the start of the current tick
+    int[] prevY; // Y-coordinate at the start of the current tick
+    int[] startX; // Initial X-coordinate for resetting
+    int[] startY; // Initial Y-coordinate for resetting
+    char[] direction; // Current direction: U (Up), D (Down), L (Left), R (Right)
+    int[] velocityX; // Velocity in the X direction
+    int[] velocityY; // Velocity in the Y direction
+    byte[] state; // NORMAL, FRIGHTENED, EATEN or HOUSE
+
+    // Constructor to allocate room for the given number of ghosts
+    Ghosts(int capacity, int size) {
+        this.size = size;
+        ensureCapacity(capacity);
+    }
+
+    // Grow the arrays if they cannot hold the given number of ghosts
+    void ensureCapacity(int capacity) {
+        if (type != null && type.length >= capacity) {
+            return;
+        }
+        type = new char[capacity];
+        x = new int[capacity];
+        y = new int[capacity];
+        prevX = new int[capacity];
+        prevY = new int[capacity];
+        startX = new int[capacity];
+        startY = new int[capacity];
+        direction = new char[capacity];
+        velocityX = new int[capacity];
+        velocityY = new int[capacity];
+        state = new byte[capacity];
+    }
+
+    // Remove all ghosts (the arrays are kept for reuse)
+    void clear() {
+        count = 0;
+    }
+
+    // Add a ghost standing still at its starting position and return its index
+    int add(char ghostType, int startX, int startY) {
+        int i = count++;
+        type[i] = ghostType;
+        this.startX[i] = startX;
+        this.startY[i] = startY;
+        direction[i] = 'U';
+        velocityX[i] = 0;
+        velocityY[i] = 0;
+        reset(i);
+        return i;
+    }
+
+    // Update a ghost's velocity based on its current direction
+    void updateVelocity(int i, int tileSize) {
+        velocityX[i] = Block.velocityX(direction[i], tileSize);
+        velocityY[i] = Block.velocityY(direction[i], tileSize);
+    }
+
+    // Reset a ghost to its initial position, waiting there to be released
+    void reset(int i) {
+        x[i] = startX[i];
+        y[i] = startY[i];
+        prevX[i] = x[i];
+        prevY[i] = y[i];
+        state[i] = HOUSE;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free latency histogram with HDR-style log-linear buckets: every power of
+// two is split into 16 sub-buckets, so any recorded value is reported to within
+// about 6%, from single nanoseconds up to the full long range, in a fixed 960
+// counters. Recording is a couple of atomic increments and never allocates.
+// Reading percentiles while another thread records gives approximate figures,
+// and reset() must not race with recording if no sample may be lost.
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 4; // log2 of the sub-buckets per power of two
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // Sub-buckets per power of two
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS; // Covers every positive long
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS); // Values per bucket
+    private final AtomicLong count = new AtomicLong(); // Number of recorded values
+    private final AtomicLong max = new AtomicLong(); // Largest recorded value
+
+    // Record one value (negative values count as zero)
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    // Number of recorded values
+    long count() {
+        return count.get();
+    }
+
+    // Largest recorded value
+    long max() {
+        return max.get();
+    }
+
+    // Value at the given percentile (0..100), to bucket precision; 0 if empty
+    long percentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= wanted) {
+                return Math.min(lowestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    // Forget all recorded values
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+
+    // Bucket holding a value: values below 16 get a bucket each, larger values
+    // share a bucket with others that have the same top five bits
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Smallest value that falls into a bucket
+    static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << shift;
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Loads levels from the *.txt tile maps in a directory (same legend as
+// Simulation.CLASSIC_MAP, one row per line). The first time a level is read it is
+// parsed, validated and stored in compact binary form under .cache/ in the same
+// directory; afterwards the cache file is memory-mapped and the layout is read
+// straight out of it, and once loaded a layout is kept for the rest of the run.
+// A stale, truncated or corrupt cache file (including one whose food count or
+// spawn tiles disagree with its tiles) is ignored and rewritten from the text
+// file.
+//
+// Cache file: int magic "PMLV", byte version, long source size, long source
+// modification time, then the layout as written by MazeLayout.write()
+public class LevelLibrary {
+    static final int MAGIC = 0x504D4C56; // "PMLV"
+    // Current cache format version (2: tunnel rows and power pellets in the legend)
+    static final byte VERSION = 2;
+    static final int HEADER_SIZE = 4 + 1 + 8 + 8; // Bytes before the layout data
+
+    final Path directory; // Directory holding the level files
+    final Path cacheDirectory; // Directory holding the binary cache files
+    final List<Path> files; // Level files, sorted by name
+    private final MazeLayout[] loaded; // Layouts already loaded, by level number
+
+    // Constructor to list the level files in a directory
+    LevelLibrary(Path directory) throws IOException {
+        this.directory = directory;
+        this.cacheDirectory = directory.resolve(".cache");
+        List<Path> found = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.txt")) {
+            for (Path file : stream) {
+                found.add(file);
+            }
+        }
+        if (found.isEmpty()) {
+            throw new IOException("No *.txt levels in " + directory);
+        }
+        Collections.sort(found);
+        this.files = found;
+        this.loaded = new MazeLayout[found.size()];
+    }
+
+    // Number of levels in the library
+    int size() {
+        return files.size();
+    }
+
+    // Layout of the given level, loading it on first use
+    synchronized MazeLayout level(int index) throws IOException {
+        if (loaded[index] == null) {
+            loaded[index] = load(files.get(index));
+        }
+        return loaded[index];
+    }
+
+    // Load every level now, e.g. to surface broken levels at startup
+    void loadAll() throws IOException {
+        for (int i = 0; i < size(); i++) {
+            level(i);
+        }
+    }
+
+    // Endless rotation through the levels, starting after the given one; used as a
+    // Simulation's next-level supplier
+    Supplier<MazeLayout> rotation(int current) {
+        int[] position = { current };
+        return () -> {
+            position[0] = (position[0] + 1) % size();
+            try {
+                return level(position[0]);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not load " + files.get(position[0]), e);
+            }
+        };
+    }
+
+    // Read a level from its cache file if that is up to date, otherwise parse the
+    // text file, validate it and write a fresh cache file
+    private MazeLayout load(Path file) throws IOException {
+        long sourceSize = Files.size(file);
+        long sourceModified = Files.getLastModifiedTime(file).toMillis();
+        Path cacheFile = cacheDirectory.resolve(file.getFileName() + ".pml");
+        if (Files.exists(cacheFile)) {
+            try {
+                MazeLayout cached = readCache(cacheFile, sourceSize, sourceModified);
+                if (cached != null) {
+                    return cached;
+                }
+            } catch (RuntimeException e) {
+                // Truncated or corrupt cache file: parse the level again and rewrite it
+            }
+        }
+
+        MazeLayout layout;
+        try {
+            layout = new MazeLayout(readTileMap(file));
+            layout.validate();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid level " + file + ": " + e.getMessage(), e);
+        }
+        writeCache(cacheFile, layout, sourceSize, sourceModified);
+        return layout;
+    }
+
+    // Read a layout from its cache file, or return null if the file is stale or
+    // from another format version; throws if the layout data is malformed
+    private MazeLayout readCache(Path cacheFile, long sourceSize, long sourceModified) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.get() != VERSION
+                    || buffer.getLong() != sourceSize || buffer.getLong() != sourceModified) {
+                return null;
+            }
+            // Checked against its own tile characters; reachability was validated
+            // when the cache was written
+            MazeLayout layout = new MazeLayout(buffer);
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes after the layout");
+            }
+            return layout;
+        }
+    }
+
+    // Read a tile map file, one row per line
+    static String[] readTileMap(Path file) throws IOException {
+        List<String> lines = new ArrayList<String>(Files.readAllLines(file, StandardCharsets.US_ASCII));
+        // Ignore blank lines at the end of the file
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        if (lines.isEmpty()) {
+            throw new IOException("Empty level " + file);
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    // Write a validated layout to its cache file through a memory mapping
+    private void writeCache(Path cacheFile, MazeLayout layout, long sourceSize, long sourceModified)
+            throws IOException {
+        Files.createDirectories(cacheDirectory);
+        int size = HEADER_SIZE + layout.binarySize();
+        Path temp = cacheDirectory.resolve(cacheFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.put(VERSION);
+            buffer.putLong(sourceSize);
+            buffer.putLong(sourceModified);
+            layout.write(buffer);
+        }
+        // Replace the old cache file in one step so readers never see half a file
+        Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
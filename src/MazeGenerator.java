@@ -0,0 +1,364 @@
+import java.util.Random;
+import java.util.stream.IntStream;
+
+// Seeded procedural maze generator producing tile maps in the usual legend (see
+// Simulation.CLASSIC_MAP). The same seed and size always give the same maze.
+// Corridors run along the odd rows and columns: the left half of the board is
+// carved as a maze over that lattice of corridor "nodes" and mirrored onto the
+// right half around the centre column, so every maze is symmetric. Dead ends
+// are then opened up into loops, a ghost house goes in the middle, Pac-Man
+// below it, power pellets in the corners and tunnels on the sides.
+//
+// The lattice is carved in square chunks of CHUNK_NODES nodes, each a pure
+// function of the seed and its position, so the chunks of a large map are carved
+// in parallel without changing the result. Neighbouring chunks are then joined
+// through a few doors, and a final pass opens a wall wherever part of the
+// lattice is still cut off, so every maze is fully connected.
+//
+// Usage: java MazeGenerator [--seed=N] [--size=ROWSxCOLUMNS]
+// prints a maze, e.g. to save as a level file.
+public class MazeGenerator {
+    static final int CHUNK_NODES = 16; // Width and height of a generation chunk, in corridor nodes
+    static final int MIN_ROWS = 11; // Smallest board that fits the ghost house and Pac-Man
+    static final int MIN_COLUMNS = 11;
+
+    final int rowCount; // Number of rows of the generated mazes
+    final int columnCount; // Number of columns of the generated mazes
+    private final int centre; // Mirror axis column
+    private final int nodeRows; // Corridor node rows
+    private final int nodeColumns; // Corridor node columns in the left half, centre column included
+    private final int houseRow; // Node row of the ghost house
+    private final int pacmanRow; // Node row of Pac-Man's spawn
+
+    // Constructor to set up a generator for mazes of about the given size. Rows
+    // are rounded up to an odd number, and columns so that the centre column is a
+    // corridor column (3 mod 4), which the mirroring needs.
+    MazeGenerator(int rows, int columns) {
+        rowCount = Math.max(rows, MIN_ROWS) | 1;
+        int c = Math.max(columns, MIN_COLUMNS);
+        while (c % 4 != 3) {
+            c++;
+        }
+        columnCount = c;
+        centre = columnCount / 2;
+        nodeRows = (rowCount - 1) / 2;
+        nodeColumns = (centre + 1) / 2;
+        houseRow = nodeRows / 2;
+        pacmanRow = Math.min(nodeRows - 1, houseRow + Math.max(2, nodeRows / 4));
+    }
+
+    // Generate and validate the layout for a seed
+    MazeLayout layout(long seed) {
+        MazeLayout layout = new MazeLayout(generate(seed));
+        layout.validate();
+        return layout;
+    }
+
+    // Generate the tile map for a seed
+    String[] generate(long seed) {
+        boolean[] open = new boolean[rowCount * columnCount]; // Carved tiles of the left half
+        boolean[] reserved = new boolean[nodeRows * nodeColumns]; // Nodes taken by the ghost house
+        reserved[houseRow * nodeColumns + nodeColumns - 1] = true;
+        reserved[houseRow * nodeColumns + nodeColumns - 2] = true;
+
+        // Carve every chunk; a chunk only writes its own nodes and the walls between them
+        int chunkRows = (nodeRows + CHUNK_NODES - 1) / CHUNK_NODES;
+        int chunkColumns = (nodeColumns + CHUNK_NODES - 1) / CHUNK_NODES;
+        IntStream chunks = IntStream.range(0, chunkRows * chunkColumns);
+        if (chunkRows * chunkColumns > 1) {
+            chunks = chunks.parallel();
+        }
+        chunks.forEach(k -> carveChunk(open, reserved, seed, k / chunkColumns, k % chunkColumns));
+
+        Random random = new Random(seed);
+        joinChunks(open, reserved, random, chunkRows, chunkColumns);
+        connect(open, reserved);
+        removeDeadEnds(open, reserved, random);
+        return render(open);
+    }
+
+    // Carve a spanning tree over the nodes of one chunk with a randomised
+    // depth-first search (it restarts if the ghost house cuts the chunk in two)
+    private void carveChunk(boolean[] open, boolean[] reserved, long seed, int chunkRow, int chunkColumn) {
+        Random random = new Random(seed * 0x9E3779B97F4A7C15L + chunkRow * 1_000_003L + chunkColumn);
+        int i0 = chunkRow * CHUNK_NODES;
+        int i1 = Math.min(i0 + CHUNK_NODES, nodeRows);
+        int j0 = chunkColumn * CHUNK_NODES;
+        int j1 = Math.min(j0 + CHUNK_NODES, nodeColumns);
+        int[] stack = new int[(i1 - i0) * (j1 - j0)];
+        int[] candidates = new int[4];
+        for (int i = i0; i < i1; i++) {
+            for (int j = j0; j < j1; j++) {
+                int start = i * nodeColumns + j;
+                if (reserved[start] || open[tileOf(start)]) {
+                    continue;
+                }
+                open[tileOf(start)] = true;
+                int top = 0;
+                stack[top++] = start;
+                while (top > 0) {
+                    int node = stack[top - 1];
+                    int ni = node / nodeColumns;
+                    int nj = node % nodeColumns;
+                    int count = 0;
+                    if (ni > i0) {
+                        count = addCandidate(candidates, count, node - nodeColumns, open, reserved);
+                    }
+                    if (ni < i1 - 1) {
+                        count = addCandidate(candidates, count, node + nodeColumns, open, reserved);
+                    }
+                    if (nj > j0) {
+                        count = addCandidate(candidates, count, node - 1, open, reserved);
+                    }
+                    if (nj < j1 - 1) {
+                        count = addCandidate(candidates, count, node + 1, open, reserved);
+                    }
+                    if (count == 0) {
+                        top--; // Nothing left to visit from here
+                        continue;
+                    }
+                    int next = candidates[random.nextInt(count)];
+                    openWall(open, node, next);
+                    open[tileOf(next)] = true;
+                    stack[top++] = next;
+                }
+            }
+        }
+    }
+
+    // Add a node to the candidates if it can still be carved into
+    private int addCandidate(int[] candidates, int count, int node, boolean[] open, boolean[] reserved) {
+        if (!reserved[node] && !open[tileOf(node)]) {
+            candidates[count++] = node;
+        }
+        return count;
+    }
+
+    // Open a few doors in every wall between two neighbouring chunks
+    private void joinChunks(boolean[] open, boolean[] reserved, Random random, int chunkRows, int chunkColumns) {
+        for (int ci = 0; ci < chunkRows; ci++) {
+            for (int cj = 0; cj < chunkColumns; cj++) {
+                int i0 = ci * CHUNK_NODES;
+                int i1 = Math.min(i0 + CHUNK_NODES, nodeRows);
+                int j0 = cj * CHUNK_NODES;
+                int j1 = Math.min(j0 + CHUNK_NODES, nodeColumns);
+                int doors = Math.max(1, CHUNK_NODES / 6);
+                for (int d = 0; d < doors; d++) {
+                    if (cj + 1 < chunkColumns) { // Door to the chunk on the right
+                        int node = (i0 + random.nextInt(i1 - i0)) * nodeColumns + j1 - 1;
+                        if (!reserved[node] && !reserved[node + 1]) {
+                            openWall(open, node, node + 1);
+                        }
+                    }
+                    if (ci + 1 < chunkRows) { // Door to the chunk below
+                        int node = (i1 - 1) * nodeColumns + j0 + random.nextInt(j1 - j0);
+                        if (!reserved[node] && !reserved[node + nodeColumns]) {
+                            openWall(open, node, node + nodeColumns);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Make sure every node can be reached: flood the lattice from the first node
+    // and open a wall from any node left out to a reached neighbour, until none is
+    private void connect(boolean[] open, boolean[] reserved) {
+        int nodes = nodeRows * nodeColumns;
+        boolean[] reached = new boolean[nodes];
+        int[] queue = new int[nodes];
+        flood(open, reserved, reached, queue, 0);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int node = 0; node < nodes; node++) {
+                if (reached[node] || reserved[node]) {
+                    continue;
+                }
+                int neighbour = reachedNeighbour(reached, node);
+                if (neighbour >= 0) {
+                    openWall(open, node, neighbour);
+                    flood(open, reserved, reached, queue, node);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    // A reached node next to the given one, or -1
+    private int reachedNeighbour(boolean[] reached, int node) {
+        int i = node / nodeColumns;
+        int j = node % nodeColumns;
+        if (i > 0 && reached[node - nodeColumns]) {
+            return node - nodeColumns;
+        } else if (i < nodeRows - 1 && reached[node + nodeColumns]) {
+            return node + nodeColumns;
+        } else if (j > 0 && reached[node - 1]) {
+            return node - 1;
+        } else if (j < nodeColumns - 1 && reached[node + 1]) {
+            return node + 1;
+        }
+        return -1;
+    }
+
+    // Mark every node reachable from a start node through open walls
+    private void flood(boolean[] open, boolean[] reserved, boolean[] reached, int[] queue, int start) {
+        int head = 0;
+        int tail = 0;
+        reached[start] = true;
+        queue[tail++] = start;
+        while (head < tail) {
+            int node = queue[head++];
+            int i = node / nodeColumns;
+            int j = node % nodeColumns;
+            if (i > 0) {
+                tail = visit(open, reserved, reached, queue, tail, node, node - nodeColumns);
+            }
+            if (i < nodeRows - 1) {
+                tail = visit(open, reserved, reached, queue, tail, node, node + nodeColumns);
+            }
+            if (j > 0) {
+                tail = visit(open, reserved, reached, queue, tail, node, node - 1);
+            }
+            if (j < nodeColumns - 1) {
+                tail = visit(open, reserved, reached, queue, tail, node, node + 1);
+            }
+        }
+    }
+
+    private int visit(boolean[] open, boolean[] reserved, boolean[] reached, int[] queue, int tail, int from,
+            int to) {
+        if (!reached[to] && !reserved[to] && open[wallBetween(from, to)]) {
+            reached[to] = true;
+            queue[tail++] = to;
+        }
+        return tail;
+    }
+
+    // Open a wall out of every dead end, so ghosts and Pac-Man move in loops. A
+    // node on the centre column also leaves to the right through its mirror
+    // image, so its left wall counts twice.
+    private void removeDeadEnds(boolean[] open, boolean[] reserved, Random random) {
+        int[] candidates = new int[4];
+        for (int node = 0; node < nodeRows * nodeColumns; node++) {
+            if (reserved[node]) {
+                continue;
+            }
+            int i = node / nodeColumns;
+            int j = node % nodeColumns;
+            int exits = 0;
+            int count = 0;
+            if (i > 0) {
+                exits += open[wallBetween(node, node - nodeColumns)] ? 1 : 0;
+                count = addClosed(candidates, count, node, node - nodeColumns, open, reserved);
+            }
+            if (i < nodeRows - 1) {
+                exits += open[wallBetween(node, node + nodeColumns)] ? 1 : 0;
+                count = addClosed(candidates, count, node, node + nodeColumns, open, reserved);
+            }
+            if (j > 0) {
+                exits += (open[wallBetween(node, node - 1)] ? 1 : 0) * (j == nodeColumns - 1 ? 2 : 1);
+                count = addClosed(candidates, count, node, node - 1, open, reserved);
+            }
+            if (j < nodeColumns - 1) {
+                exits += open[wallBetween(node, node + 1)] ? 1 : 0;
+                count = addClosed(candidates, count, node, node + 1, open, reserved);
+            }
+            if (exits <= 1 && count > 0) {
+                openWall(open, node, candidates[random.nextInt(count)]);
+            }
+        }
+    }
+
+    // Add a neighbour to the candidates if the wall to it is closed and it is not in the ghost house
+    private int addClosed(int[] candidates, int count, int node, int neighbour, boolean[] open, boolean[] reserved) {
+        if (!reserved[neighbour] && !open[wallBetween(node, neighbour)]) {
+            candidates[count++] = neighbour;
+        }
+        return count;
+    }
+
+    // Turn the carved left half into the full tile map
+    private String[] render(boolean[] open) {
+        char[][] tiles = new char[rowCount][columnCount];
+        for (int r = 0; r < rowCount; r++) {
+            for (int c = 0; c < columnCount; c++) {
+                int source = c <= centre ? c : columnCount - 1 - c; // Mirror the left half
+                tiles[r][c] = open[r * columnCount + source] ? ' ' : 'X';
+            }
+        }
+
+        // Tunnels: the side walls open on a few evenly spaced corridor rows
+        int tunnels = Math.max(1, nodeRows / 16);
+        for (int t = 0; t < tunnels; t++) {
+            int i = (2 * t + 1) * nodeRows / (2 * tunnels);
+            if (i == houseRow || i == pacmanRow) {
+                i = i > 0 ? i - 1 : i + 1;
+            }
+            tiles[2 * i + 1][0] = 'O';
+            tiles[2 * i + 1][columnCount - 1] = 'O';
+        }
+
+        // Ghost house: a walled room with the red ghost in its doorway
+        int r = 2 * houseRow + 1;
+        for (int c = centre - 3; c <= centre + 3; c++) {
+            tiles[r - 1][c] = 'X';
+            tiles[r + 1][c] = 'X';
+            tiles[r][c] = 'O';
+        }
+        tiles[r][centre - 3] = 'X';
+        tiles[r][centre + 3] = 'X';
+        tiles[r - 1][centre] = 'r';
+        tiles[r][centre - 1] = 'b';
+        tiles[r][centre] = 'p';
+        tiles[r][centre + 1] = 'o';
+
+        // Pac-Man below the house, power pellets in the four corners
+        tiles[2 * pacmanRow + 1][centre] = 'P';
+        tiles[1][1] = '*';
+        tiles[1][columnCount - 2] = '*';
+        tiles[rowCount - 2][1] = '*';
+        tiles[rowCount - 2][columnCount - 2] = '*';
+
+        String[] tileMap = new String[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            tileMap[row] = new String(tiles[row]);
+        }
+        return tileMap;
+    }
+
+    // Tile index of a node
+    private int tileOf(int node) {
+        return (2 * (node / nodeColumns) + 1) * columnCount + 2 * (node % nodeColumns) + 1;
+    }
+
+    // Tile index of the wall between two neighbouring nodes
+    private int wallBetween(int a, int b) {
+        return (tileOf(a) + tileOf(b)) / 2;
+    }
+
+    // Open the wall between two neighbouring nodes
+    private void openWall(boolean[] open, int a, int b) {
+        open[wallBetween(a, b)] = true;
+    }
+
+    public static void main(String[] args) {
+        long seed = 1;
+        int rows = Simulation.CLASSIC_MAP.length;
+        int columns = Simulation.CLASSIC_MAP[0].length();
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--size=")) {
+                String[] size = arg.substring("--size=".length()).split("x");
+                rows = Integer.parseInt(size[0]);
+                columns = Integer.parseInt(size[1]);
+            }
+        }
+        MazeGenerator generator = new MazeGenerator(rows, columns);
+        generator.layout(seed); // Validate before printing
+        for (String row : generator.generate(seed)) {
+            System.out.println(row);
+        }
+    }
+}
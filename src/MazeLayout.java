@@ -0,0 +1,324 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+// Read-only, parsed form of a tile map. It is built once and can be shared by any
+// number of games, each of which copies the initial cells into its own TileGrid.
+// X = wall, O = skip (no object), P = Pac-Man, ' ' = food, * = power pellet,
+// b/o/p/r = ghosts. A row whose first and last tiles are both open is a
+// tunnel: leaving the board on one side enters it on the other.
+public class MazeLayout {
+    static final String LEGEND = "XOPbopr *"; // Characters allowed in a tile map
+
+    // Bits of a tile's exit mask, one per direction
+    static final byte EXIT_UP = 1;
+    static final byte EXIT_LEFT = 2;
+    static final byte EXIT_DOWN = 4;
+    static final byte EXIT_RIGHT = 8;
+
+    final int rowCount; // Number of rows in the layout
+    final int columnCount; // Number of columns in the layout
+    final byte[] tiles; // Tile map characters, row-major
+    final byte[] cells; // Initial TileGrid cell flags, row-major
+    final long[] food; // Initial TileGrid food bitset, by cell index (power pellets included)
+    final long[] power; // Bitset of the tiles holding a power pellet, by cell index
+    final int foodCount; // Number of food dots on a fresh board
+    final byte[] exits; // Directions an actor can leave each open tile in (EXIT_* bits), 0 for walls
+
+    final int pacmanRow; // Pac-Man's starting row
+    final int pacmanColumn; // Pac-Man's starting column
+    final char[] ghostTypes; // Tile map character of each ghost, in map order
+    final int[] ghostRows; // Starting row of each ghost
+    final int[] ghostColumns; // Starting column of each ghost
+
+    private volatile DistanceFields distances; // Path distances, built on first use
+
+    // Constructor to parse a tile map
+    MazeLayout(String[] tileMap) {
+        this.rowCount = tileMap.length;
+        this.columnCount = tileMap[0].length();
+        this.tiles = new byte[rowCount * columnCount];
+        this.cells = new byte[rowCount * columnCount];
+        this.food = new long[(rowCount * columnCount + 63) >> 6];
+
+        int foodTotal = 0;
+        int pacRow = -1;
+        int pacColumn = -1;
+        ArrayList<int[]> ghosts = new ArrayList<int[]>(); // {type, row, column}
+        for (int r = 0; r < rowCount; r++) {
+            String row = tileMap[r];
+            if (row.length() != columnCount) {
+                throw new IllegalArgumentException("Row " + r + " has " + row.length()
+                        + " columns, expected " + columnCount);
+            }
+            for (int c = 0; c < columnCount; c++) {
+                char tileMapChar = row.charAt(c);
+                int index = r * columnCount + c;
+                if (LEGEND.indexOf(tileMapChar) < 0) {
+                    throw new IllegalArgumentException("Unknown tile '" + tileMapChar + "' at row " + r
+                            + ", column " + c);
+                }
+                tiles[index] = (byte) tileMapChar;
+                if (tileMapChar == 'X') { // Wall
+                    cells[index] = TileGrid.WALL;
+                } else if (tileMapChar == ' ' || tileMapChar == '*') { // Food (small dot or power pellet)
+                    food[index >> 6] |= 1L << index;
+                    foodTotal++;
+                } else if (tileMapChar == 'P') { // Pac-Man
+                    if (pacRow >= 0) {
+                        throw new IllegalArgumentException("Second Pac-Man spawn at row " + r + ", column " + c);
+                    }
+                    pacRow = r;
+                    pacColumn = c;
+                } else if (tileMapChar == 'b' || tileMapChar == 'o' || tileMapChar == 'p' || tileMapChar == 'r') {
+                    ghosts.add(new int[] { tileMapChar, r, c }); // Ghost
+                }
+            }
+        }
+        if (pacRow < 0) {
+            throw new IllegalArgumentException("Tile map has no Pac-Man spawn (P)");
+        }
+        this.foodCount = foodTotal;
+        this.pacmanRow = pacRow;
+        this.pacmanColumn = pacColumn;
+        this.ghostTypes = new char[ghosts.size()];
+        this.ghostRows = new int[ghosts.size()];
+        this.ghostColumns = new int[ghosts.size()];
+        for (int i = 0; i < ghosts.size(); i++) {
+            int[] ghost = ghosts.get(i);
+            ghostTypes[i] = (char) ghost[0];
+            ghostRows[i] = ghost[1];
+            ghostColumns[i] = ghost[2];
+        }
+        this.exits = buildExits();
+        this.power = buildPower();
+    }
+
+    // Constructor to read a layout previously stored with write(); nothing is
+    // re-parsed, the arrays are copied straight out of the buffer and then
+    // checked against each other (see checkStored()). Throws
+    // IllegalArgumentException or BufferUnderflowException on malformed or
+    // inconsistent data.
+    MazeLayout(ByteBuffer buffer) {
+        rowCount = buffer.getInt();
+        columnCount = buffer.getInt();
+        foodCount = buffer.getInt();
+        pacmanRow = buffer.getInt();
+        pacmanColumn = buffer.getInt();
+        int ghostCount = buffer.getInt();
+        if (rowCount <= 0 || columnCount <= 0 || ghostCount < 0
+                || (long) rowCount * columnCount + 9L * ghostCount > buffer.remaining()) {
+            throw new IllegalArgumentException("Malformed layout data: " + rowCount + "x" + columnCount
+                    + " with " + ghostCount + " ghosts in " + buffer.remaining() + " bytes");
+        }
+        ghostTypes = new char[ghostCount];
+        ghostRows = new int[ghostCount];
+        ghostColumns = new int[ghostCount];
+        for (int i = 0; i < ghostCount; i++) {
+            ghostTypes[i] = (char) buffer.get();
+            ghostRows[i] = buffer.getInt();
+            ghostColumns[i] = buffer.getInt();
+        }
+        tiles = new byte[rowCount * columnCount];
+        buffer.get(tiles);
+        cells = new byte[rowCount * columnCount];
+        buffer.get(cells);
+        food = new long[(rowCount * columnCount + 63) >> 6];
+        buffer.asLongBuffer().get(food);
+        buffer.position(buffer.position() + food.length * 8);
+        checkStored();
+        exits = buildExits();
+        power = buildPower();
+    }
+
+    // Check that stored layout data is what parsing its tile characters would
+    // give: legal characters, walls, the food bitset and its count, and the
+    // spawn tiles. One pass over the cells, so a stale or corrupt cache file
+    // that happens to have the right length is still caught; reachability is
+    // left to validate(), which ran when the data was written.
+    private void checkStored() {
+        int foodTotal = 0;
+        int ghostTotal = 0;
+        for (int cell = 0; cell < tiles.length; cell++) {
+            char tile = (char) tiles[cell];
+            boolean hasFood = (food[cell >> 6] & (1L << cell)) != 0;
+            if (LEGEND.indexOf(tile) < 0 || (cells[cell] == TileGrid.WALL) != (tile == 'X')
+                    || (cells[cell] & ~TileGrid.WALL) != 0 || hasFood != (tile == ' ' || tile == '*')) {
+                throw new IllegalArgumentException("Inconsistent layout data at row " + cell / columnCount
+                        + ", column " + cell % columnCount);
+            }
+            foodTotal += hasFood ? 1 : 0;
+            ghostTotal += "bopr".indexOf(tile) >= 0 ? 1 : 0;
+        }
+        int spare = tiles.length & 63; // Bits past the last cell must be clear
+        if (foodTotal != foodCount || (spare != 0 && food[food.length - 1] >>> spare != 0)) {
+            throw new IllegalArgumentException("Stored food count " + foodCount + " does not match the "
+                    + foodTotal + " dots in the food bitset");
+        }
+        if (!holds(pacmanRow, pacmanColumn, 'P')) {
+            throw new IllegalArgumentException("Stored Pac-Man spawn at row " + pacmanRow + ", column "
+                    + pacmanColumn + " is not a P tile");
+        }
+        if (ghostTotal != ghostTypes.length) {
+            throw new IllegalArgumentException("Stored ghost count " + ghostTypes.length + " does not match the "
+                    + ghostTotal + " ghost tiles");
+        }
+        for (int i = 0; i < ghostTypes.length; i++) {
+            if (!holds(ghostRows[i], ghostColumns[i], ghostTypes[i])) {
+                throw new IllegalArgumentException("Stored spawn of ghost " + i + " at row " + ghostRows[i]
+                        + ", column " + ghostColumns[i] + " is not a " + ghostTypes[i] + " tile");
+            }
+        }
+    }
+
+    // Whether a position is on the board and holds the given tile character
+    private boolean holds(int row, int column, char tile) {
+        return row >= 0 && row < rowCount && column >= 0 && column < columnCount
+                && tiles[row * columnCount + column] == tile;
+    }
+
+    // Number of bytes write() produces for this layout
+    int binarySize() {
+        return 6 * 4 + ghostTypes.length * 9 + tiles.length + cells.length + food.length * 8;
+    }
+
+    // Store the layout in compact binary form
+    void write(ByteBuffer buffer) {
+        buffer.putInt(rowCount);
+        buffer.putInt(columnCount);
+        buffer.putInt(foodCount);
+        buffer.putInt(pacmanRow);
+        buffer.putInt(pacmanColumn);
+        buffer.putInt(ghostTypes.length);
+        for (int i = 0; i < ghostTypes.length; i++) {
+            buffer.put((byte) ghostTypes[i]);
+            buffer.putInt(ghostRows[i]);
+            buffer.putInt(ghostColumns[i]);
+        }
+        buffer.put(tiles);
+        buffer.put(cells);
+        for (long word : food) {
+            buffer.putLong(word);
+        }
+    }
+
+    // Work out every open tile's legal exits from the walls, including the
+    // wraparound exits of tunnel rows
+    private byte[] buildExits() {
+        byte[] result = new byte[cells.length];
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cells[cell] == TileGrid.WALL) {
+                continue;
+            }
+            int mask = 0;
+            for (char direction : GhostBrain.EXIT_ORDER) {
+                int next = adjacent(cell, direction);
+                if (next >= 0 && cells[next] != TileGrid.WALL) {
+                    mask |= exitBit(direction);
+                }
+            }
+            result[cell] = (byte) mask;
+        }
+        return result;
+    }
+
+    // Find the power pellets in the tile map
+    private long[] buildPower() {
+        long[] result = new long[food.length];
+        for (int cell = 0; cell < tiles.length; cell++) {
+            if (tiles[cell] == '*') {
+                result[cell >> 6] |= 1L << cell;
+            }
+        }
+        return result;
+    }
+
+    // Whether a tile held a power pellet on a fresh board
+    boolean isPower(int cell) {
+        return (power[cell >> 6] & (1L << cell)) != 0;
+    }
+
+    // Exit mask bit for a direction (0 for anything else)
+    static int exitBit(char direction) {
+        if (direction == 'U') {
+            return EXIT_UP;
+        } else if (direction == 'L') {
+            return EXIT_LEFT;
+        } else if (direction == 'D') {
+            return EXIT_DOWN;
+        } else if (direction == 'R') {
+            return EXIT_RIGHT;
+        }
+        return 0;
+    }
+
+    // Cell index of the tile reached by leaving a cell in the given direction, or
+    // -1 if that exit is blocked; a single mask lookup, no wall checks
+    int neighbour(int cell, char direction) {
+        if ((exits[cell] & exitBit(direction)) == 0) {
+            return -1;
+        }
+        return adjacent(cell, direction);
+    }
+
+    // Cell index next to a cell in the given direction, wrapping from one side of
+    // the board to the other, or -1 past the top or bottom edge
+    private int adjacent(int cell, char direction) {
+        int r = cell / columnCount;
+        int c = cell % columnCount;
+        if (direction == 'U') {
+            r--;
+        } else if (direction == 'D') {
+            r++;
+        } else if (direction == 'L') {
+            c = c == 0 ? columnCount - 1 : c - 1;
+        } else if (direction == 'R') {
+            c = c == columnCount - 1 ? 0 : c + 1;
+        }
+        if (r < 0 || r >= rowCount) {
+            return -1;
+        }
+        return r * columnCount + c;
+    }
+
+    // Rebuild the tile map rows as strings
+    String[] tileMap() {
+        String[] tileMap = new String[rowCount];
+        for (int r = 0; r < rowCount; r++) {
+            tileMap[r] = new String(tiles, r * columnCount, columnCount, StandardCharsets.US_ASCII);
+        }
+        return tileMap;
+    }
+
+    // Check that the layout is playable: every food dot and ghost must be reachable
+    // from Pac-Man's spawn; throws IllegalArgumentException otherwise
+    void validate() {
+        if (foodCount == 0) {
+            throw new IllegalArgumentException("Tile map has no food");
+        }
+        DistanceFields paths = distances();
+        int pacmanCell = pacmanRow * columnCount + pacmanColumn;
+        for (int cell = 0; cell < cells.length; cell++) {
+            boolean needed = (food[cell >> 6] & (1L << cell)) != 0 || "bopr".indexOf(tiles[cell]) >= 0;
+            if (needed && paths.distance(cell, pacmanCell) == DistanceFields.UNREACHABLE) {
+                throw new IllegalArgumentException("Tile at row " + cell / columnCount + ", column "
+                        + cell % columnCount + " cannot be reached from Pac-Man");
+            }
+        }
+    }
+
+    // Shortest-path distances between tiles, computed once and shared by every game
+    DistanceFields distances() {
+        DistanceFields result = distances;
+        if (result == null) {
+            synchronized (this) {
+                result = distances;
+                if (result == null) {
+                    result = new DistanceFields(this);
+                    distances = result;
+                }
+            }
+        }
+        return result;
+    }
+}
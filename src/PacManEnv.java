@@ -0,0 +1,163 @@
+import java.nio.ByteBuffer;
+
+// Gym-style reinforcement learning environment around the game rules in
+// Simulation: reset(seed) starts an episode, step(action) plays one tick and
+// returns the reward, and done() tells whether the episode is over.
+//
+// The observation is a tile-grid tensor of CHANNELS x rows x columns bytes
+// (channel-major, 1 = present), written straight into a ByteBuffer the caller
+// can hand to a trainer without copying. It is kept up to date incrementally:
+// walls are only written on reset, eaten food is cleared from the grid's eaten
+// log, and only the tiles the actors left and entered are rewritten each step.
+//
+// Actions: 0 = no input, 1 = up, 2 = down, 3 = left, 4 = right (anything else
+// is no input). The reward is the change in score, minus LIFE_PENALTY for
+// every life lost.
+public class PacManEnv {
+    // Observation channels
+    static final int WALL = 0;
+    static final int FOOD = 1; // Small dots and power pellets
+    static final int POWER = 2; // Power pellets only
+    static final int PACMAN = 3;
+    static final int GHOST = 4; // Ghosts that are dangerous or waiting to be released
+    static final int FRIGHTENED = 5; // Ghosts that can be eaten
+    static final int CHERRY = 6;
+    static final int CHANNELS = 7;
+
+    static final char[] ACTIONS = { Simulation.NO_INPUT, 'U', 'D', 'L', 'R' }; // Input of each action
+    static final float LIFE_PENALTY = 100; // Reward taken away for a lost life
+
+    // Episode end flags returned by done()
+    static final byte RUNNING = 0;
+    static final byte TERMINATED = 1; // Game over
+    static final byte TRUNCATED = 2; // Step limit reached
+
+    final MazeLayout layout; // Board of every episode
+    final int tileSize; // Tile size of the simulation
+    final long maxSteps; // Step limit of an episode
+    final ByteBuffer observation; // Observation tensor, at absolute offsets from 0
+    final int planeSize; // Bytes per channel (rows x columns)
+    Simulation sim; // Game of the current episode
+    long steps = 0; // Steps taken in the current episode
+
+    private int lastScore; // Score after the previous step
+    private int lastLives; // Lives after the previous step
+    private int observedGeneration; // Grid generation the food channels were written for
+    private int observedEaten; // Eaten-log entries already cleared from the food channels
+    private final int[] actorOffsets; // Observation offsets set for the actors on the last step
+    private int actorOffsetCount = 0;
+
+    // Constructor to set up an environment writing its observations into the
+    // given buffer (from its position, observationSize() bytes), or into a new
+    // direct buffer if it is null
+    PacManEnv(MazeLayout layout, int tileSize, long maxSteps, ByteBuffer observation) {
+        this.layout = layout;
+        this.tileSize = tileSize;
+        this.maxSteps = maxSteps;
+        this.planeSize = layout.rowCount * layout.columnCount;
+        this.observation = observation != null ? observation.slice() : ByteBuffer.allocateDirect(observationSize(layout));
+        this.actorOffsets = new int[2 + layout.ghostTypes.length];
+    }
+
+    // Bytes in an observation of the given layout
+    static int observationSize(MazeLayout layout) {
+        return CHANNELS * layout.rowCount * layout.columnCount;
+    }
+
+    // Start a new episode with the given seed and write its first observation.
+    // The game is only allocated on the first reset; later episodes reuse it.
+    void reset(long seed) {
+        if (sim == null) {
+            sim = new Simulation(layout, tileSize, seed);
+        } else {
+            sim.newGame(seed);
+        }
+        steps = 0;
+        lastScore = sim.score;
+        lastLives = sim.lives;
+        writeBoard();
+        writeActors();
+    }
+
+    // Play one tick with the given action and return its reward; an action out
+    // of range counts as no input
+    float step(int action) {
+        sim.step(action >= 0 && action < ACTIONS.length ? ACTIONS[action] : Simulation.NO_INPUT);
+        steps++;
+        float reward = sim.score - lastScore - LIFE_PENALTY * (lastLives - sim.lives);
+        lastScore = sim.score;
+        lastLives = sim.lives;
+        if (sim.grid.generation != observedGeneration) {
+            writeBoard(); // Cleared: a fresh board (possibly a new level)
+        } else {
+            writeEaten();
+        }
+        writeActors();
+        return reward;
+    }
+
+    // RUNNING, TERMINATED or TRUNCATED
+    byte done() {
+        if (sim.gameOver) {
+            return TERMINATED;
+        }
+        return steps >= maxSteps ? TRUNCATED : RUNNING;
+    }
+
+    // Write the wall, food and power channels from scratch
+    private void writeBoard() {
+        TileGrid grid = sim.grid;
+        MazeLayout board = sim.layout;
+        for (int cell = 0; cell < planeSize; cell++) {
+            boolean food = (grid.food[cell >> 6] & (1L << cell)) != 0;
+            observation.put(WALL * planeSize + cell, grid.cells[cell] == TileGrid.WALL ? (byte) 1 : 0);
+            observation.put(FOOD * planeSize + cell, food ? (byte) 1 : 0);
+            observation.put(POWER * planeSize + cell, food && board.isPower(cell) ? (byte) 1 : 0);
+        }
+        for (int c = PACMAN; c < CHANNELS; c++) {
+            for (int cell = 0; cell < planeSize; cell++) {
+                observation.put(c * planeSize + cell, (byte) 0);
+            }
+        }
+        actorOffsetCount = 0;
+        observedGeneration = grid.generation;
+        observedEaten = grid.eatenCount;
+    }
+
+    // Clear the food eaten since the last step
+    private void writeEaten() {
+        TileGrid grid = sim.grid;
+        for (int i = observedEaten; i < grid.eatenCount; i++) {
+            int cell = grid.eatenCells[i];
+            observation.put(FOOD * planeSize + cell, (byte) 0);
+            observation.put(POWER * planeSize + cell, (byte) 0);
+        }
+        observedEaten = grid.eatenCount;
+    }
+
+    // Move the actors: clear the tiles set on the last step, then set the current ones
+    private void writeActors() {
+        for (int i = 0; i < actorOffsetCount; i++) {
+            observation.put(actorOffsets[i], (byte) 0);
+        }
+        actorOffsetCount = 0;
+        setActor(PACMAN, sim.pacmanCell());
+        Ghosts ghosts = sim.ghosts;
+        for (int i = 0; i < ghosts.count; i++) {
+            if (ghosts.state[i] == Ghosts.FRIGHTENED) {
+                setActor(FRIGHTENED, sim.ghostCell(i));
+            } else if (ghosts.state[i] != Ghosts.EATEN) {
+                setActor(GHOST, sim.ghostCell(i));
+            }
+        }
+        if (sim.cherryActive) {
+            setActor(CHERRY, sim.cellAt(sim.cherry.x, sim.cherry.y));
+        }
+    }
+
+    private void setActor(int channel, int cell) {
+        int offset = channel * planeSize + cell;
+        observation.put(offset, (byte) 1);
+        actorOffsets[actorOffsetCount++] = offset;
+    }
+}
@@ -0,0 +1,310 @@
+import java.nio.ByteBuffer;
+
+// Binary wire format between GameServer and GameClient.
+//
+// Client to server (fixed size, no framing):
+//   JOIN   byte 1, int session id, byte role (0 = Pac-Man, 1..n = ghost n-1,
+//          -1 = spectator)
+//   INPUT  byte 2, byte input (U, D, L, R or K); for a ghost the direction
+//          sticks until the next input
+//
+// Server to client, each message is a varint length followed by that many bytes:
+//   WELCOME  byte 1, int session id, byte role granted (-1 if the requested one
+//            was taken), varint tile size, varint layout size, layout (see
+//            MazeLayout.write), then a FULL body
+//   FULL     byte 2, varint tick, varint score, varint lives, byte flags,
+//            byte Pac-Man direction, varint food word count, food bitset words,
+//            zigzag Pac-Man x and y, varint ghost count, zigzag x and y of
+//            every ghost, state byte of every ghost (see Ghosts), varint
+//            cherry cell if the cherry is on the board
+//   DELTA    byte 3, varint ticks since the previous snapshot, byte flags,
+//            [byte Pac-Man direction], [zigzag score change], [zigzag lives
+//            change], varint number of dots eaten, zigzag cell index change of
+//            each eaten dot, zigzag Pac-Man x and y change, zigzag x and y change
+//            of every ghost, [state byte of every ghost], [varint cherry
+//            cell]; bracketed fields are only present when their flag is set
+//
+// A DELTA is relative to the previous snapshot the client received, so a client
+// that misses one (its send buffer was full) is sent a FULL snapshot instead.
+// Positions are in pixels; a tick of movement is a delta of a few pixels, so
+// most snapshots take one byte per coordinate.
+public class Protocol {
+    // Client to server message types
+    static final byte JOIN = 1;
+    static final byte INPUT = 2;
+    static final int JOIN_SIZE = 6; // Bytes in a JOIN message
+    static final int INPUT_SIZE = 2; // Bytes in an INPUT message
+
+    // Server to client message types
+    static final byte WELCOME = 1;
+    static final byte FULL = 2;
+    static final byte DELTA = 3;
+
+    // Roles a client can ask for
+    static final byte PACMAN = 0;
+    static final byte SPECTATOR = -1;
+
+    // Snapshot flags
+    static final int GAME_OVER = 1; // The game is over
+    static final int CHERRY = 1 << 1; // The cherry is on the board
+    static final int RELOADED = 1 << 2; // The board was reloaded; eaten dots follow from a full board
+    static final int DIRECTION = 1 << 3; // Pac-Man's direction changed
+    static final int SCORE = 1 << 4; // The score changed
+    static final int LIVES = 1 << 5; // The number of lives changed
+    static final int CHERRY_MOVED = 1 << 6; // The cherry was (re)spawned
+    static final int GHOST_STATES = 1 << 7; // Some ghost became frightened, was eaten or was released
+
+    // The state described by the last snapshot of a game, which the next DELTA is
+    // encoded against
+    static final class Baseline {
+        long tick;
+        int score;
+        int lives;
+        char direction;
+        int generation; // TileGrid generation
+        int eatenCount; // Entries of the grid's eaten log already sent
+        int pacmanX;
+        int pacmanY;
+        final int[] ghostX;
+        final int[] ghostY;
+        final byte[] ghostState;
+        int cherryCell = -1; // Cell of the cherry, -1 when it is not on the board
+
+        // Constructor to capture a game's current state
+        Baseline(Simulation sim) {
+            ghostX = new int[sim.ghosts.count];
+            ghostY = new int[sim.ghosts.count];
+            ghostState = new byte[sim.ghosts.count];
+            capture(sim);
+        }
+
+        // Make the game's current state the baseline
+        void capture(Simulation sim) {
+            tick = sim.tick;
+            score = sim.score;
+            lives = sim.lives;
+            direction = sim.pacman.direction;
+            generation = sim.grid.generation;
+            eatenCount = sim.grid.eatenCount;
+            pacmanX = sim.pacman.x;
+            pacmanY = sim.pacman.y;
+            System.arraycopy(sim.ghosts.x, 0, ghostX, 0, ghostX.length);
+            System.arraycopy(sim.ghosts.y, 0, ghostY, 0, ghostY.length);
+            System.arraycopy(sim.ghosts.state, 0, ghostState, 0, ghostState.length);
+            cherryCell = sim.cherryActive ? sim.cellAt(sim.cherry.x, sim.cherry.y) : -1;
+        }
+    }
+
+    // Largest possible DELTA body for a game, for sizing buffers
+    static int maxDeltaSize(Simulation sim) {
+        return 10 + 2 + 2 * 10 + 5 + 5 * sim.grid.cells.length + 2 * 5 * (1 + sim.ghosts.count) + sim.ghosts.count + 5;
+    }
+
+    // Largest possible FULL body for a game, for sizing buffers
+    static int maxFullSize(Simulation sim) {
+        return 3 * 10 + 2 + 5 + 8 * sim.grid.food.length + 2 * 5 * (1 + sim.ghosts.count) + sim.ghosts.count + 5 + 5;
+    }
+
+    // Write a signed value as a zigzag varint, so small negative numbers stay short
+    static void putZigzag(ByteBuffer buffer, long value) {
+        Replay.putVarint(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    // Read a zigzag varint
+    static long getZigzag(ByteBuffer buffer) {
+        long value = Replay.getVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Number of bytes putVarint() uses for a value
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    // Write the body of a FULL snapshot of a simulation
+    static void putFull(ByteBuffer buffer, Simulation sim) {
+        Replay.putVarint(buffer, sim.tick);
+        Replay.putVarint(buffer, sim.score);
+        Replay.putVarint(buffer, sim.lives);
+        buffer.put((byte) stateFlags(sim));
+        buffer.put((byte) sim.pacman.direction);
+        long[] food = sim.grid.food;
+        Replay.putVarint(buffer, food.length);
+        for (long word : food) {
+            buffer.putLong(word);
+        }
+        putZigzag(buffer, sim.pacman.x);
+        putZigzag(buffer, sim.pacman.y);
+        Ghosts ghosts = sim.ghosts;
+        Replay.putVarint(buffer, ghosts.count);
+        for (int i = 0; i < ghosts.count; i++) {
+            putZigzag(buffer, ghosts.x[i]);
+            putZigzag(buffer, ghosts.y[i]);
+        }
+        buffer.put(ghosts.state, 0, ghosts.count);
+        if (sim.cherryActive) {
+            Replay.putVarint(buffer, sim.cellAt(sim.cherry.x, sim.cherry.y));
+        }
+    }
+
+    // Write the body of a DELTA snapshot from the baseline to the simulation's
+    // current state, then make the current state the new baseline
+    static void putDelta(ByteBuffer buffer, Simulation sim, Baseline baseline) {
+        TileGrid grid = sim.grid;
+        boolean reloaded = grid.generation != baseline.generation;
+        int cherryCell = sim.cherryActive ? sim.cellAt(sim.cherry.x, sim.cherry.y) : -1;
+        boolean cherryMoved = cherryCell >= 0 && cherryCell != baseline.cherryCell;
+        Ghosts ghosts = sim.ghosts;
+        boolean statesChanged = false;
+        for (int i = 0; i < ghosts.count && !statesChanged; i++) {
+            statesChanged = ghosts.state[i] != baseline.ghostState[i];
+        }
+        int flags = stateFlags(sim)
+                | (reloaded ? RELOADED : 0)
+                | (sim.pacman.direction != baseline.direction ? DIRECTION : 0)
+                | (sim.score != baseline.score ? SCORE : 0)
+                | (sim.lives != baseline.lives ? LIVES : 0)
+                | (cherryMoved ? CHERRY_MOVED : 0)
+                | (statesChanged ? GHOST_STATES : 0);
+        Replay.putVarint(buffer, sim.tick - baseline.tick);
+        buffer.put((byte) flags);
+        if ((flags & DIRECTION) != 0) {
+            buffer.put((byte) sim.pacman.direction);
+        }
+        if ((flags & SCORE) != 0) {
+            putZigzag(buffer, sim.score - baseline.score);
+        }
+        if ((flags & LIVES) != 0) {
+            putZigzag(buffer, sim.lives - baseline.lives);
+        }
+        // Dots eaten since the baseline, or since the reload if the board was reloaded
+        int first = reloaded ? 0 : baseline.eatenCount;
+        Replay.putVarint(buffer, grid.eatenCount - first);
+        int previousCell = 0;
+        for (int i = first; i < grid.eatenCount; i++) {
+            putZigzag(buffer, grid.eatenCells[i] - previousCell);
+            previousCell = grid.eatenCells[i];
+        }
+        putZigzag(buffer, sim.pacman.x - baseline.pacmanX);
+        putZigzag(buffer, sim.pacman.y - baseline.pacmanY);
+        for (int i = 0; i < ghosts.count; i++) {
+            putZigzag(buffer, ghosts.x[i] - baseline.ghostX[i]);
+            putZigzag(buffer, ghosts.y[i] - baseline.ghostY[i]);
+        }
+        if (statesChanged) {
+            buffer.put(ghosts.state, 0, ghosts.count);
+        }
+        if (cherryMoved) {
+            Replay.putVarint(buffer, cherryCell);
+        }
+        baseline.capture(sim);
+    }
+
+    // Apply the body of a FULL snapshot to a client's mirror of the game
+    static void applyFull(ByteBuffer buffer, Simulation mirror) {
+        mirror.tick = Replay.getVarint(buffer);
+        mirror.score = (int) Replay.getVarint(buffer);
+        mirror.lives = (int) Replay.getVarint(buffer);
+        int flags = buffer.get() & 0xFF;
+        mirror.pacman.direction = (char) buffer.get();
+        TileGrid grid = mirror.grid;
+        grid.load(mirror.layout); // Bumps the generation, so renderers redraw the food
+        int words = (int) Replay.getVarint(buffer);
+        if (words != grid.food.length) {
+            throw new IllegalStateException("Snapshot has " + words + " food words, expected " + grid.food.length);
+        }
+        int foodCount = 0;
+        for (int i = 0; i < words; i++) {
+            grid.food[i] = buffer.getLong();
+            foodCount += Long.bitCount(grid.food[i]);
+        }
+        grid.foodCount = foodCount;
+        Block pacman = mirror.pacman;
+        pacman.x = pacman.prevX = (int) getZigzag(buffer);
+        pacman.y = pacman.prevY = (int) getZigzag(buffer);
+        Ghosts ghosts = mirror.ghosts;
+        int ghostCount = (int) Replay.getVarint(buffer);
+        if (ghostCount != ghosts.count) {
+            throw new IllegalStateException("Snapshot has " + ghostCount + " ghosts, expected " + ghosts.count);
+        }
+        for (int i = 0; i < ghostCount; i++) {
+            ghosts.x[i] = ghosts.prevX[i] = (int) getZigzag(buffer);
+            ghosts.y[i] = ghosts.prevY[i] = (int) getZigzag(buffer);
+        }
+        buffer.get(ghosts.state, 0, ghostCount);
+        mirror.gameOver = (flags & GAME_OVER) != 0;
+        mirror.cherryActive = (flags & CHERRY) != 0;
+        if (mirror.cherryActive) {
+            readCherry(buffer, mirror);
+        }
+    }
+
+    // Apply the body of a DELTA snapshot to a client's mirror of the game
+    static void applyDelta(ByteBuffer buffer, Simulation mirror) {
+        mirror.tick += Replay.getVarint(buffer);
+        int flags = buffer.get() & 0xFF;
+        if ((flags & DIRECTION) != 0) {
+            mirror.pacman.direction = (char) buffer.get();
+        }
+        if ((flags & SCORE) != 0) {
+            mirror.score += (int) getZigzag(buffer);
+        }
+        if ((flags & LIVES) != 0) {
+            mirror.lives += (int) getZigzag(buffer);
+        }
+        TileGrid grid = mirror.grid;
+        if ((flags & RELOADED) != 0) {
+            grid.load(mirror.layout);
+        }
+        int eaten = (int) Replay.getVarint(buffer);
+        int cell = 0;
+        for (int i = 0; i < eaten; i++) {
+            cell += (int) getZigzag(buffer);
+            if ((grid.food[cell >> 6] & (1L << cell)) != 0) {
+                grid.food[cell >> 6] &= ~(1L << cell);
+                grid.foodCount--;
+                grid.eatenCells[grid.eatenCount++] = cell; // Let cached food layers patch this tile
+            }
+        }
+        // Interpolating renderers move the actors from where they were on the last snapshot
+        Block pacman = mirror.pacman;
+        pacman.prevX = pacman.x;
+        pacman.prevY = pacman.y;
+        pacman.x += (int) getZigzag(buffer);
+        pacman.y += (int) getZigzag(buffer);
+        pacman.velocityX = pacman.x - pacman.prevX; // Lets controllers tell whether Pac-Man is stuck
+        pacman.velocityY = pacman.y - pacman.prevY;
+        Ghosts ghosts = mirror.ghosts;
+        for (int i = 0; i < ghosts.count; i++) {
+            ghosts.prevX[i] = ghosts.x[i];
+            ghosts.prevY[i] = ghosts.y[i];
+            ghosts.x[i] += (int) getZigzag(buffer);
+            ghosts.y[i] += (int) getZigzag(buffer);
+        }
+        if ((flags & GHOST_STATES) != 0) {
+            buffer.get(ghosts.state, 0, ghosts.count);
+        }
+        mirror.gameOver = (flags & GAME_OVER) != 0;
+        mirror.cherryActive = (flags & CHERRY) != 0;
+        if ((flags & CHERRY_MOVED) != 0) {
+            readCherry(buffer, mirror);
+        }
+    }
+
+    // Flags describing the state that is sent in full in every snapshot
+    static int stateFlags(Simulation sim) {
+        return (sim.gameOver ? GAME_OVER : 0) | (sim.cherryActive ? CHERRY : 0);
+    }
+
+    // Place the mirror's cherry on the cell read from a snapshot
+    private static void readCherry(ByteBuffer buffer, Simulation mirror) {
+        int cell = (int) Replay.getVarint(buffer);
+        mirror.cherry.x = cell % mirror.columnCount * mirror.tileSize;
+        mirror.cherry.y = cell / mirror.columnCount * mirror.tileSize;
+    }
+}
@@ -0,0 +1,39 @@
+// Strategy for games where players may control ghosts: a ghost with a player
+// takes the direction the player last asked for as soon as that exit is open,
+// and otherwise keeps going straight (or wanders when it reaches a wall). Ghosts
+// without a player are steered by the fallback strategy.
+public class RemoteBrain implements GhostBrain {
+    final GhostBrain fallback; // Strategy for ghosts nobody controls
+    final boolean[] controlled; // Whether each ghost has a player
+    final char[] wanted; // Direction each player last asked for (NO_INPUT = none yet)
+
+    // Constructor for a game with the given number of ghosts
+    RemoteBrain(GhostBrain fallback, int ghostCount) {
+        this.fallback = fallback;
+        this.controlled = new boolean[ghostCount];
+        this.wanted = new char[ghostCount];
+    }
+
+    // Give ghost i to a player, or back to the fallback strategy
+    void setControlled(int ghost, boolean playerControlled) {
+        controlled[ghost] = playerControlled;
+        wanted[ghost] = Simulation.NO_INPUT;
+    }
+
+    @Override
+    public char decide(Simulation sim, int ghost) {
+        if (!controlled[ghost]) {
+            return fallback.decide(sim, ghost);
+        }
+        int cell = sim.ghostCell(ghost);
+        char direction = wanted[ghost];
+        if (direction != Simulation.NO_INPUT && sim.neighbourCell(cell, direction) >= 0) {
+            return direction;
+        }
+        direction = sim.ghosts.direction[ghost];
+        if (sim.neighbourCell(cell, direction) >= 0) {
+            return direction; // Keep going until the player's turn opens up
+        }
+        return GhostBrain.randomExit(sim, ghost);
+    }
+}
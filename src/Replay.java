@@ -0,0 +1,49 @@
+import java.nio.ByteBuffer;
+
+// Binary replay format shared by ReplayRecorder and ReplayPlayer.
+//
+//   int     magic "PMRP"
+//   byte    format version
+//   varint  tile size
+//   long    random seed
+//   varint  row count, varint column count
+//   bytes   tile map, one ASCII byte per tile, row by row
+//   events  varint tick delta since the previous event, then one input byte
+//           (U, D, L, R or K); an input byte of 0 ends the replay and its
+//           tick is the last tick played
+//
+// Only the seed, the map and the inputs are stored; the game is deterministic,
+// so replaying the inputs into a fresh Simulation reproduces the session.
+public class Replay {
+    static final int MAGIC = 0x504D5250; // "PMRP"
+    // Current format version (2: queued turns and tunnels, 3: power pellets and
+    // ghost release, 4: snapshot-friendly random number generator, 5: ghosts
+    // move before collisions are checked and draw their own random numbers)
+    static final byte VERSION = 5;
+    static final byte END = 0; // Input byte marking the end of the events
+
+    // Write an unsigned LEB128 variable-length integer (7 bits per byte)
+    static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // Read an unsigned LEB128 variable-length integer
+    static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) {
+                throw new IllegalStateException("Malformed varint in replay");
+            }
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
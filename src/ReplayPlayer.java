@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import javax.swing.JFrame;
+
+// Plays back a replay file (see Replay for the format). The player rebuilds the
+// recorded Simulation and acts as its Controller, feeding each recorded input
+// back on its tick, so a replay can run headless as fast as the CPU allows or
+// be shown in a PacMan panel at any speed.
+public class ReplayPlayer implements Controller {
+    final Simulation sim; // Simulation rebuilt from the replay header
+    final long endTick; // Last tick of the recording
+    private final ByteBuffer events; // Remaining encoded events
+    private long nextEventTick; // Tick of the next recorded input
+    private char nextInput; // Next recorded input, or Replay.END
+
+    // Constructor to read a replay file and set up its simulation
+    ReplayPlayer(Path path) throws IOException {
+        this(readFile(path));
+    }
+
+    // Constructor to read a replay from a buffer
+    ReplayPlayer(ByteBuffer buffer) {
+        if (buffer.getInt() != Replay.MAGIC) {
+            throw new IllegalArgumentException("Not a replay file");
+        }
+        byte version = buffer.get();
+        if (version != Replay.VERSION) {
+            throw new IllegalArgumentException("Unsupported replay version " + version);
+        }
+        int tileSize = (int) Replay.getVarint(buffer);
+        long seed = buffer.getLong();
+        int rows = (int) Replay.getVarint(buffer);
+        int columns = (int) Replay.getVarint(buffer);
+        String[] tileMap = new String[rows];
+        byte[] row = new byte[columns];
+        for (int r = 0; r < rows; r++) {
+            buffer.get(row);
+            tileMap[r] = new String(row, StandardCharsets.US_ASCII);
+        }
+        sim = new Simulation(tileMap, tileSize, seed);
+        events = buffer;
+
+        // Scan ahead once for the final tick, then rewind to the first event
+        int start = events.position();
+        long tick = 0;
+        char input;
+        do {
+            tick += Replay.getVarint(events);
+            input = (char) events.get();
+        } while (input != Replay.END);
+        endTick = tick;
+        events.position(start);
+        readNextEvent();
+    }
+
+    // Map the whole replay file into memory
+    private static ByteBuffer readFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.load();
+            return buffer;
+        }
+    }
+
+    // Decode the next event from the buffer
+    private void readNextEvent() {
+        nextEventTick += Replay.getVarint(events);
+        nextInput = (char) events.get();
+    }
+
+    // Whether the recording has been played to its end
+    boolean finished() {
+        return nextInput == Replay.END && sim.tick >= endTick;
+    }
+
+    // Controller method: the recorded input for the simulation's current tick
+    @Override
+    public char decide(Simulation sim) {
+        if (nextInput != Replay.END && nextEventTick == sim.tick) {
+            char input = nextInput;
+            readNextEvent();
+            return input;
+        }
+        return Simulation.NO_INPUT;
+    }
+
+    // Advance the replay by one tick; returns false once it has finished
+    boolean step() {
+        if (finished()) {
+            return false;
+        }
+        long before = sim.tick;
+        sim.step(decide(sim));
+        // A finished game waits for a key without advancing; if no key was
+        // recorded the replay is over
+        return sim.tick != before || nextInput != Replay.END;
+    }
+
+    // Play the rest of the replay without rendering
+    void playToEnd() {
+        while (step()) {
+        }
+    }
+
+    // Entry point: java ReplayPlayer <file> [--render] [--speed=N]
+    // Headless playback prints the final state and how fast the replay ran;
+    // --render shows it in a window at N times normal speed (default 1)
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: java ReplayPlayer <file> [--render] [--speed=N]");
+            System.exit(2);
+        }
+        boolean render = false;
+        double speed = 1;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--render")) {
+                render = true;
+            } else if (args[i].startsWith("--speed=")) {
+                speed = Double.parseDouble(args[i].substring("--speed=".length()));
+            }
+        }
+        ReplayPlayer player = new ReplayPlayer(Paths.get(args[0]));
+        if (render) {
+            show(player, speed);
+            return;
+        }
+        long start = System.nanoTime();
+        player.playToEnd();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Simulation sim = player.sim;
+        System.out.printf("ticks %d, score %d, lives %d, game over %b (%.0f ticks/s)%n",
+                sim.tick, sim.score, sim.lives, sim.gameOver, sim.tick / seconds);
+    }
+
+    // Show a replay in a window, driven by the player instead of the keyboard
+    static void show(ReplayPlayer player, double speed) {
+        JFrame frame = new JFrame("Pac Man (replay)");
+        frame.setResizable(false);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        int tickMillis = Math.max(1, (int) Math.round(Simulation.TICK_MILLIS / speed));
+        PacMan replayPanel = new PacMan(player.sim, player, tickMillis);
+        frame.add(replayPanel);
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+        replayPanel.start();
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Records a game as a replay file (see Replay for the format). Inputs are encoded
+// into a direct buffer; when it fills up it is swapped with a spare one and
+// written to the file channel on a background thread, so recording never waits
+// on disk I/O in the game loop.
+public class ReplayRecorder implements AutoCloseable {
+    static final int BUFFER_SIZE = 64 * 1024; // Size of each of the two buffers
+
+    private final FileChannel channel; // Replay file
+    private ByteBuffer active; // Buffer events are encoded into
+    private ByteBuffer spare; // Buffer being written (or free to swap in)
+    private Future<?> pendingWrite; // Background write of the spare buffer, if any
+    private final ExecutorService writer; // Thread doing the file writes
+    private long lastTick = 0; // Tick of the previous event
+    private boolean closed = false;
+
+    // Constructor to create the replay file and write its header
+    ReplayRecorder(Path path, MazeLayout layout, int tileSize, long seed) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        spare = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replay-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Header: the map can be larger than a buffer, so write it out directly
+        ByteBuffer header = ByteBuffer.allocate(32 + layout.rowCount * layout.columnCount);
+        header.putInt(Replay.MAGIC);
+        header.put(Replay.VERSION);
+        Replay.putVarint(header, tileSize);
+        header.putLong(seed);
+        Replay.putVarint(header, layout.rowCount);
+        Replay.putVarint(header, layout.columnCount);
+        header.put(layout.tiles);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    // Attach a new recorder to a simulation that has not been stepped yet
+    static ReplayRecorder attach(Simulation sim, Path path) throws IOException {
+        ReplayRecorder recorder = new ReplayRecorder(path, sim.layout, sim.tileSize, sim.seed);
+        sim.recorder = recorder;
+        return recorder;
+    }
+
+    // Record the input applied on the given tick
+    synchronized void record(long tick, char input) {
+        if (closed) {
+            return;
+        }
+        if (active.remaining() < 16) {
+            swapBuffers();
+        }
+        Replay.putVarint(active, tick - lastTick);
+        active.put((byte) input);
+        lastTick = tick;
+    }
+
+    // Hand the full buffer to the writer thread and continue in the spare one
+    private void swapBuffers() {
+        waitForPendingWrite(); // Only blocks if the disk fell a whole buffer behind
+        ByteBuffer full = active;
+        active = spare;
+        spare = full;
+        full.flip();
+        pendingWrite = writer.submit(() -> {
+            writeFully(full);
+            return null;
+        });
+    }
+
+    // Wait for the background write of the spare buffer to finish
+    private void waitForPendingWrite() {
+        if (pendingWrite == null) {
+            return;
+        }
+        try {
+            pendingWrite.get();
+        } catch (Exception e) {
+            throw new IllegalStateException("Writing replay failed", e);
+        }
+        pendingWrite = null;
+    }
+
+    // Write a whole buffer to the channel and clear it for reuse
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Write the end marker with the last tick played and close the file
+    synchronized void finish(long finalTick) throws IOException {
+        if (closed) {
+            return;
+        }
+        if (active.remaining() < 16) {
+            swapBuffers();
+        }
+        Replay.putVarint(active, Math.max(finalTick - lastTick, 0));
+        active.put(Replay.END);
+        waitForPendingWrite();
+        active.flip();
+        writeFully(active);
+        closed = true;
+        writer.shutdown();
+        channel.close();
+    }
+
+    // Close without knowing the final tick; the replay ends at the last input
+    @Override
+    public void close() throws IOException {
+        finish(lastTick);
+    }
+}
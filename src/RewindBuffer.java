@@ -0,0 +1,85 @@
+import java.nio.ByteBuffer;
+
+// Ring of snapshots covering the last few seconds of a game, for rewinding.
+// record() is called after every tick and saves a snapshot every `interval`
+// ticks into a fixed slot of one preallocated buffer, overwriting the oldest,
+// so recording allocates nothing. rewind() restores an older snapshot and
+// forgets the ones after it.
+public class RewindBuffer {
+    final int capacity; // Number of snapshots kept
+    final int interval; // Ticks between snapshots
+
+    private ByteBuffer slots; // capacity slots of slotSize bytes each
+    private int slotSize; // Bytes reserved per snapshot
+    private final MazeLayout[] layouts; // Board each snapshot was taken on
+    private final long[] ticks; // Tick each snapshot was taken on
+    private int newest = -1; // Slot of the most recent snapshot
+    private int count = 0; // Number of snapshots held
+
+    // Constructor for a ring covering the given number of seconds with a
+    // snapshot every `interval` ticks
+    RewindBuffer(int seconds, int interval) {
+        this.interval = interval;
+        this.capacity = Math.max(1, seconds * 1000 / Simulation.TICK_MILLIS / interval);
+        this.layouts = new MazeLayout[capacity];
+        this.ticks = new long[capacity];
+    }
+
+    // Save a snapshot if one is due on the game's current tick
+    void record(Simulation sim) {
+        if (sim.tick % interval != 0 || (count > 0 && ticks[newest] == sim.tick)) {
+            return;
+        }
+        int size = Snapshot.size(sim);
+        if (size > slotSize) {
+            grow(Math.max(size, Snapshot.maxSize(sim.layout))); // First snapshot, or a bigger board
+        }
+        newest = (newest + 1) % capacity;
+        slots.position(newest * slotSize);
+        Snapshot.save(sim, slots);
+        layouts[newest] = sim.layout;
+        ticks[newest] = sim.tick;
+        count = Math.min(count + 1, capacity);
+    }
+
+    // Restore the latest snapshot taken at least the given number of ticks
+    // before the game's current tick (or the oldest one held) and drop the
+    // snapshots after it; returns false if there is nothing to rewind to
+    boolean rewind(Simulation sim, long back) {
+        if (count == 0) {
+            return false;
+        }
+        while (count > 1 && ticks[newest] > sim.tick - back) {
+            layouts[newest] = null;
+            newest = (newest + capacity - 1) % capacity;
+            count--;
+        }
+        slots.position(newest * slotSize);
+        Snapshot.restore(sim, layouts[newest], slots);
+        return true;
+    }
+
+    // Number of snapshots held
+    int size() {
+        return count;
+    }
+
+    // Forget every snapshot, e.g. when a new game starts
+    void clear() {
+        for (int i = 0; i < capacity; i++) {
+            layouts[i] = null;
+        }
+        newest = -1;
+        count = 0;
+    }
+
+    // Enlarge the slots, keeping the snapshots already held
+    private void grow(int size) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity * size);
+        for (int i = 0; i < capacity && slots != null; i++) {
+            System.arraycopy(slots.array(), i * slotSize, bigger.array(), i * size, slotSize);
+        }
+        slots = bigger;
+        slotSize = size;
+    }
+}
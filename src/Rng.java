@@ -0,0 +1,37 @@
+// Seeded random number generator for the game rules (SplitMix64). Unlike
+// java.util.Random its whole state is one readable long, so snapshots can save
+// and restore it exactly and a restored game draws the same numbers.
+public class Rng {
+    static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L; // Added to the state on every draw
+
+    long state; // Advanced by GOLDEN_GAMMA on every draw
+
+    // Constructor to start the sequence for a seed
+    Rng(long seed) {
+        this.state = seed;
+    }
+
+    // Next 64 random bits
+    long nextLong() {
+        return mix(state += GOLDEN_GAMMA);
+    }
+
+    // Uniform random int in [0, bound)
+    int nextInt(int bound) {
+        return bounded(nextLong(), bound);
+    }
+
+    // SplitMix64 finaliser: spreads any 64-bit value over 64 random-looking
+    // bits, so a draw can also be derived from a seed and an index
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Uniform int in [0, bound) from 64 random bits, by multiply-shift on the
+    // top 32 bits
+    static int bounded(long bits, int bound) {
+        return (int) (((bits >>> 32) * bound) >>> 32);
+    }
+}
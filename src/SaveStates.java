@@ -0,0 +1,44 @@
+import java.awt.event.KeyEvent;
+import java.nio.ByteBuffer;
+
+// Quick-save slot and rewind ring of a game played from the keyboard, shared
+// by the Swing front ends: F5 quick-saves, F9 loads the quick-save and
+// Backspace rewinds REWIND_TICKS. Must be used from the thread that steps the
+// game.
+public class SaveStates {
+    static final int REWIND_SECONDS = 10; // Length of the rewind ring
+    static final int REWIND_INTERVAL = 5; // Ticks between rewind snapshots
+    static final int REWIND_TICKS = 2000 / Simulation.TICK_MILLIS; // How far one Backspace goes back
+
+    final RewindBuffer rewind = new RewindBuffer(REWIND_SECONDS, REWIND_INTERVAL);
+    private ByteBuffer quickSave; // Snapshot saved with F5, or null
+    private MazeLayout quickSaveLayout; // Board of the quick-save
+
+    // Whether a key is one of the save state keys
+    static boolean handles(int keyCode) {
+        return keyCode == KeyEvent.VK_F5 || keyCode == KeyEvent.VK_F9 || keyCode == KeyEvent.VK_BACK_SPACE;
+    }
+
+    // Call after every tick to keep the rewind ring up to date
+    void record(Simulation sim) {
+        rewind.record(sim);
+    }
+
+    // Carry out a save state key; returns true if the game state was replaced
+    boolean apply(Simulation sim, int keyCode) {
+        if (keyCode == KeyEvent.VK_F5) {
+            quickSave = ByteBuffer.allocate(Snapshot.size(sim));
+            Snapshot.save(sim, quickSave);
+            quickSave.flip();
+            quickSaveLayout = sim.layout;
+            return false;
+        } else if (keyCode == KeyEvent.VK_F9 && quickSave != null) {
+            Snapshot.restore(sim, quickSaveLayout, quickSave.duplicate());
+            rewind.clear(); // Its snapshots belong to the abandoned timeline
+            return true;
+        } else if (keyCode == KeyEvent.VK_BACK_SPACE) {
+            return rewind.rewind(sim, REWIND_TICKS);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,22 @@
+// Scatter strategy: each ghost heads for its own corner of the maze
+// (red top-right, pink top-left, blue bottom-right, orange bottom-left)
+public class ScatterBrain implements GhostBrain {
+    @Override
+    public char decide(Simulation sim, int ghost) {
+        return GhostBrain.steerTowards(sim, ghost, homeCorner(sim, ghost));
+    }
+
+    // Open cell nearest to the ghost's home corner
+    static int homeCorner(Simulation sim, int ghost) {
+        int[] corners = sim.layout.distances().corners; // TL, TR, BL, BR
+        char type = sim.ghosts.type[ghost];
+        if (type == 'r') {
+            return corners[1];
+        } else if (type == 'p') {
+            return corners[0];
+        } else if (type == 'b') {
+            return corners[3];
+        }
+        return corners[2];
+    }
+}
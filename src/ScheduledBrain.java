@@ -0,0 +1,27 @@
+// Default ghost strategy: alternates between scatter and chase on a fixed
+// schedule counted from the start of the level (7 seconds of scatter, then
+// 20 seconds of chase, repeating)
+public class ScheduledBrain implements GhostBrain {
+    static final int SCATTER_TICKS = 7000 / Simulation.TICK_MILLIS; // Length of a scatter phase
+    static final int CHASE_TICKS = 20000 / Simulation.TICK_MILLIS; // Length of a chase phase
+
+    final GhostBrain scatter; // Strategy used during scatter phases
+    final GhostBrain chase; // Strategy used during chase phases
+
+    // Constructor with the standard scatter and chase strategies
+    ScheduledBrain() {
+        this(new ScatterBrain(), new ChaseBrain());
+    }
+
+    // Constructor with custom scatter and chase strategies
+    ScheduledBrain(GhostBrain scatter, GhostBrain chase) {
+        this.scatter = scatter;
+        this.chase = chase;
+    }
+
+    @Override
+    public char decide(Simulation sim, int ghost) {
+        long phase = (sim.tick - sim.levelStartTick) % (SCATTER_TICKS + CHASE_TICKS);
+        return phase < SCATTER_TICKS ? scatter.decide(sim, ghost) : chase.decide(sim, ghost);
+    }
+}
@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// One event loop of a GameServer: a thread with its own Selector that owns a
+// share of the sessions and the connections joined to them. Between ticks it
+// reads client input; at every tick deadline it steps all its sessions and
+// writes each client that tick's snapshot in a single write. Sessions are
+// assigned to loops by id, so a session and all of its clients live on one
+// thread and need no locking.
+public class ServerLoop implements Runnable {
+    static final int MAX_CATCH_UP_TICKS = 5; // Ticks run back to back before the loop gives up catching up
+
+    // A client connection; it belongs to the loop that accepted it until it joins
+    // a session, then to the loop that owns the session
+    static final class Connection {
+        final SocketChannel channel; // Client socket
+        SelectionKey key; // Registration with the owning loop's selector
+        final ByteBuffer in = ByteBuffer.allocate(256); // Received bytes not yet parsed
+        ByteBuffer out; // Bytes waiting to be sent, allocated when the client joins
+        GameSession session; // Session joined, or null before the JOIN
+        byte role = Protocol.SPECTATOR; // Role granted in the session
+        int joinSession; // Session id asked for in the JOIN
+        byte joinRole; // Role asked for in the JOIN
+        boolean needsFull = false; // A snapshot was dropped, so the next one must be FULL
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    final GameServer server; // Server this loop belongs to
+    final Selector selector; // Selector for this loop's sockets
+    final LatencyHistogram tickTimes = new LatencyHistogram(); // Time to tick every session, per tick
+    final HashMap<Integer, GameSession> sessions = new HashMap<Integer, GameSession>(); // Sessions by id
+    private final ArrayList<GameSession> sessionList = new ArrayList<GameSession>(); // Sessions, for ticking
+    private final ConcurrentLinkedQueue<Connection> arrivals = new ConcurrentLinkedQueue<Connection>(); // Handed over by other loops
+    volatile int sessionCount = 0; // Number of sessions, for statistics
+    volatile int connectionCount = 0; // Number of joined connections, for statistics
+    private volatile boolean running = true;
+
+    // Constructor to open the loop's selector
+    ServerLoop(GameServer server) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+    }
+
+    // Hand a connection that has sent its JOIN over to this loop (thread safe)
+    void adopt(Connection connection) {
+        arrivals.add(connection);
+        selector.wakeup();
+    }
+
+    // Ask the loop to stop after the current tick
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long tickNanos = server.tickMillis * 1_000_000L;
+        long nextTick = System.nanoTime() + tickNanos;
+        try {
+            while (running) {
+                // Wait for input until the next tick is due
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    selector.select((wait + 999_999) / 1_000_000);
+                } else {
+                    selector.selectNow();
+                }
+                handleKeys();
+                Connection arrival;
+                while ((arrival = arrivals.poll()) != null) {
+                    register(arrival);
+                }
+
+                long now = System.nanoTime();
+                if (now >= nextTick) {
+                    tickSessions();
+                    tickTimes.record(System.nanoTime() - now);
+                    nextTick += tickNanos;
+                    if (now - nextTick > MAX_CATCH_UP_TICKS * tickNanos) {
+                        nextTick = now + tickNanos; // Too far behind: drop the missed ticks
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Server loop failed: " + e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    // Accept new clients, read input and finish pending writes
+    private void handleKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                accept((ServerSocketChannel) key.channel());
+                continue;
+            }
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    read(connection);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush(connection);
+                }
+            } catch (IOException e) {
+                close(connection);
+            }
+        }
+    }
+
+    // Accept every pending client; they stay on this loop until they join
+    private void accept(ServerSocketChannel serverChannel) {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true); // Snapshots are small and latency matters
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            }
+        } catch (IOException e) {
+            System.err.println("Accept failed: " + e);
+        }
+    }
+
+    // Register a connection handed over by another loop and join its session
+    private void register(Connection connection) {
+        try {
+            connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+            join(connection);
+            parse(connection);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    // Read whatever the client sent and parse the complete messages
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.in) < 0) {
+            close(connection);
+            return;
+        }
+        parse(connection);
+    }
+
+    // Handle the complete messages in a connection's input buffer
+    private void parse(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        in.flip();
+        ServerLoop owner = this; // Loop the connection belongs to after this message
+        while (in.hasRemaining() && owner == this) {
+            byte type = in.get(in.position());
+            if (type == Protocol.JOIN && connection.session == null) {
+                if (in.remaining() < Protocol.JOIN_SIZE) {
+                    break;
+                }
+                in.get();
+                connection.joinSession = in.getInt();
+                connection.joinRole = in.get();
+                owner = server.loopFor(connection.joinSession);
+                if (owner == this) {
+                    join(connection);
+                }
+            } else if (type == Protocol.INPUT && connection.session != null) {
+                if (in.remaining() < Protocol.INPUT_SIZE) {
+                    break;
+                }
+                in.get();
+                connection.session.input(connection, (char) in.get());
+            } else {
+                throw new IOException("Unexpected message type " + type);
+            }
+        }
+        in.compact();
+        if (owner != this) {
+            // The session lives on another loop: move the connection there, along
+            // with any input that arrived after the JOIN
+            connection.key.cancel();
+            owner.adopt(connection);
+        }
+    }
+
+    // Add a connection to the session it asked for, creating the session if needed,
+    // and send the WELCOME
+    private void join(Connection connection) throws IOException {
+        GameSession session = sessions.get(connection.joinSession);
+        if (session == null) {
+            session = server.createSession(connection.joinSession);
+            sessions.put(session.id, session);
+            sessionList.add(session);
+            sessionCount = sessionList.size();
+        }
+        connection.session = session;
+        connection.role = session.join(connection, connection.joinRole);
+        connection.out = ByteBuffer.allocateDirect(Math.max(GameServer.SEND_BUFFER_SIZE, 2 * session.welcomeSize()));
+        session.putWelcome(connection.out, connection.role);
+        connectionCount++;
+        flush(connection);
+    }
+
+    // Step every session and send each client its snapshot
+    private void tickSessions() {
+        // Backwards, as a session is removed when its last client is dropped
+        for (int s = sessionList.size() - 1; s >= 0; s--) {
+            GameSession session = sessionList.get(s);
+            if (!session.tick()) {
+                continue;
+            }
+            for (int c = session.connections.size() - 1; c >= 0; c--) {
+                Connection connection = session.connections.get(c);
+                if (connection.needsFull) {
+                    connection.needsFull = !session.putFull(connection.out);
+                } else if (!session.putDelta(connection.out)) {
+                    connection.needsFull = true; // The client is behind: resync it once there is room
+                }
+                try {
+                    flush(connection);
+                } catch (IOException e) {
+                    close(connection);
+                }
+            }
+        }
+    }
+
+    // Write as much of the send buffer as the socket takes, and wait for the
+    // socket to become writable if some is left over
+    private void flush(Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        if (out == null || out.position() == 0) {
+            return;
+        }
+        out.flip();
+        connection.channel.write(out);
+        out.compact();
+        int interest = out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (connection.key.interestOps() != interest) {
+            connection.key.interestOps(interest);
+        }
+    }
+
+    // Drop a client, and its session once nobody is left in it
+    private void close(Connection connection) {
+        if (connection.key != null) {
+            connection.key.cancel();
+        }
+        closeQuietly(connection.channel);
+        GameSession session = connection.session;
+        if (session == null) {
+            return;
+        }
+        connection.session = null;
+        connectionCount--;
+        session.leave(connection);
+        if (session.connections.isEmpty()) {
+            sessions.remove(session.id);
+            sessionList.remove(session);
+            sessionCount = sessionList.size();
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+    }
+}
@@ -0,0 +1,748 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+// Headless game core: owns the board, actors, score, lives and random number
+// generator, and advances the game one fixed tick at a time with step(input).
+// Nothing here depends on Swing, so it can run without a display at any rate.
+// Once a game is set up, step() allocates nothing: ghosts live in primitive
+// arrays, food in a bitset, and the cherry block is reused. Timed effects (cherry
+// expiry, frightened ghosts, ghost release) are events in a tick scheduler.
+// The whole game state can be saved and restored with Snapshot.
+//
+// The same rules scale to thousands of actors (see Swarm and addCrowd()): ghost
+// collisions only look at the ghosts in the spatial hash buckets around each
+// Pac-Man, and with a ghostPool set the ghosts are moved in parallel chunks.
+// Each ghost's random choices are derived from one draw per tick and the
+// ghost's index, so a game plays out the same whatever the number of threads.
+public class Simulation {
+    // Length of one tick in milliseconds (the Swing game loop runs one tick per
+    // timer event, about 20 ticks per second)
+    static final int TICK_MILLIS = 50;
+    // Number of ticks a cherry stays on the board before disappearing (5 seconds)
+    static final int CHERRY_LIFETIME_TICKS = 5000 / TICK_MILLIS;
+    // Number of ticks ghosts stay frightened after a power pellet (6 seconds)
+    static final int FRIGHTENED_TICKS = 6000 / TICK_MILLIS;
+    // Ticks between the releases of the four groups of ghosts (3 seconds)
+    static final int RELEASE_INTERVAL_TICKS = 3000 / TICK_MILLIS;
+    // Ticks an eaten ghost waits on its spawn tile before coming out again (1 second)
+    static final int RESPAWN_TICKS = 1000 / TICK_MILLIS;
+    static final int POWER_PELLET_SCORE = 50; // Points for a power pellet (a dot is 10)
+    static final int GHOST_SCORE = 200; // Points for the first ghost eaten per pellet, doubling up to 1600
+    static final int BUCKET_TILES = 4; // Width and height of a spatial hash bucket in tiles
+    static final int PARALLEL_THRESHOLD = 2048; // Ghost count from which a ghostPool moves the ghosts
+    static final int CHUNK_SIZE = 1024; // Ghosts per parallel task
+    static final String CROWD_GHOST_TYPES = "rbpo"; // Types given to addCrowd()'s ghosts in turn
+    static final int RESPAWN_CLEARANCE = 3; // Tiles between a caught crowd Pac-Man's new tile and any ghost
+    static final int RESPAWN_TRIES = 16; // Random tiles tried for that before taking the last one
+
+    // Kinds of scheduled events
+    static final int CHERRY_EXPIRES = 0; // The cherry disappears
+    static final int FRIGHTENED_ENDS = 1; // Frightened ghosts go back to normal
+    static final int GHOST_RELEASED = 2; // A ghost leaves its spawn tile (argument: ghost index)
+
+    // Inputs accepted by step(): a direction (U, D, L, R), no input, or any other key
+    static final char NO_INPUT = 0; // Nothing pressed this tick
+    static final char ANY_KEY = 'K'; // A non-arrow key (restarts the game when it is over)
+
+    // Tile map defining the classic game board layout
+    // X = wall, O = skip (no object), P = Pac-Man, ' ' = food, * = power pellet,
+    // b/o/p/r = ghosts
+    static final String[] CLASSIC_MAP = {
+            "XXXXXXXXXXXXXXXXXXX",
+            "X        X        X",
+            "X*XX XXX X XXX XX*X",
+            "X                 X",
+            "X XX X XXXXX X XX X",
+            "X    X       X    X",
+            "XXXX XXXX XXXX XXXX",
+            "OOOX X       X XOOO",
+            "XXXX X XXrXX X XXXX",
+            "O       bpo       O",
+            "XXXX X XXXXX X XXXX",
+            "OOOX X       X XOOO",
+            "XXXX X XXXXX X XXXX",
+            "X        X        X",
+            "X XX XXX X XXX XX X",
+            "X* X     P     X *X",
+            "XX X X XXXXX X X XX",
+            "X    X   X   X    X",
+            "X XXXXXX X XXXXXX X",
+            "X                 X",
+            "XXXXXXXXXXXXXXXXXXX"
+    };
+
+    // Game board dimensions and tile size (the layout changes when levels rotate)
+    MazeLayout layout; // Parsed layout of the board, shared read-only between games
+    int rowCount; // Number of rows in the game grid
+    int columnCount; // Number of columns in the game grid
+    final int tileSize; // Size of each tile in pixels
+    int boardWidth; // Total width of the board
+    int boardHeight; // Total height of the board
+    Supplier<MazeLayout> nextLevel; // Supplies the next board once one is cleared (null = same board)
+
+    // Tile grid for walls and food, and collections for the moving game objects
+    TileGrid grid; // Wall and food occupancy, indexed by tile
+    Ghosts ghosts; // Ghost positions and directions, stored in primitive arrays
+    GhostBrain ghostBrain = new ScheduledBrain(); // Steers the ghosts (pluggable)
+    GhostBrain frightenedBrain = new FrightenedBrain(); // Steers frightened ghosts
+    TickScheduler timers = new TickScheduler(); // Pending timed effects
+    int ghostsEatenInChain = 0; // Ghosts eaten since the last power pellet
+    Block pacman; // Pac-Man, the one steered by step()'s input
+    Block[] pacmen; // Every Pac-Man: pacman first, then those added by addCrowd()
+    int crowdGhosts = 0; // Ghosts added by addCrowd() on top of the layout's
+    SpatialHash hash; // Ghosts by bucket, for the collision phase
+    private int[] touching; // Ghosts touching the Pac-Man being checked (scratch)
+    ForkJoinPool ghostPool; // Moves the ghosts in parallel chunks past PARALLEL_THRESHOLD, or null
+    private GhostChunk[] chunks; // One task per CHUNK_SIZE ghosts, built on first use
+    private RecursiveAction allChunks; // Forks every chunk and waits for them
+    long ghostSeed; // Drawn once per tick; seeds the ghosts' random choices (see ghostRandom())
+
+    // Variables for cherry functionality
+    Block cherry; // Cherry block, reused for every spawn
+    boolean cherryActive = false; // Whether the cherry is currently on the board
+
+    long seed; // Seed of the random number generator
+    Rng random; // Random number generator for ghost movement and cherry spawn
+    ReplayRecorder recorder; // Records every input for replays (null when not recording)
+    TickStats stats; // Collects per-phase timings (null when not instrumented)
+    long tick = 0; // Number of ticks simulated so far
+    long levelStartTick = 0; // Tick on which the current board was loaded
+    int levelsCleared = 0; // Number of times all the food has been eaten
+    int score = 0; // Player's score
+    int lives = 3; // Player's remaining lives
+    boolean gameOver = false; // Flag indicating if the game is over
+
+    // Moves one slice of the ghosts; slices only write their own ghosts' slots
+    private final class GhostChunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int from; // First ghost of the slice
+        final int to; // One past the last ghost of the slice
+
+        GhostChunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            moveGhosts(from, to);
+        }
+    }
+
+    // Constructor to set up a game on the given tile map with a seeded random generator
+    Simulation(String[] tileMap, int tileSize, long seed) {
+        this(new MazeLayout(tileMap), tileSize, seed);
+    }
+
+    // Constructor to set up a game on an already parsed layout
+    Simulation(MazeLayout layout, int tileSize, long seed) {
+        this.tileSize = tileSize;
+        this.seed = seed;
+        this.random = new Rng(seed);
+        this.ghosts = new Ghosts(layout.ghostTypes.length, tileSize);
+        this.pacman = new Block('P', 0, 0, tileSize, tileSize);
+        this.pacmen = new Block[] { pacman };
+        this.cherry = new Block('c', 0, 0, tileSize, tileSize);
+        useLayout(layout);
+
+        loadMap(); // Initialize the game board from the tile map
+    }
+
+    // Switch to another layout; loadMap() must be called afterwards. The grid and
+    // ghost arrays are only reallocated if the new layout needs more room.
+    void useLayout(MazeLayout next) {
+        layout = next;
+        rowCount = next.rowCount;
+        columnCount = next.columnCount;
+        boardWidth = columnCount * tileSize;
+        boardHeight = rowCount * tileSize;
+        if (grid == null || grid.rowCount != rowCount || grid.columnCount != columnCount) {
+            grid = new TileGrid(rowCount, columnCount, tileSize);
+            hash = new SpatialHash(boardWidth, boardHeight, BUCKET_TILES * tileSize, 0);
+        }
+        ghosts.ensureCapacity(next.ghostTypes.length + crowdGhosts);
+        hash.ensureCapacity(ghosts.type.length);
+        if (touching == null || touching.length < ghosts.type.length) {
+            touching = new int[ghosts.type.length];
+        }
+        cherryActive = false; // The cherry's tile may not exist on the new board
+    }
+
+    // Add Pac-Men and ghosts on top of the layout's own, for stress runs on big
+    // boards: their spawn tiles are spread evenly over the open tiles, and they
+    // go back to them on every loadMap(). Only the first Pac-Man follows step()'s
+    // input; the others are steered through their desiredDirection.
+    void addCrowd(int pacmanCount, int ghostCount) {
+        Block[] more = Arrays.copyOf(pacmen, 1 + pacmanCount);
+        for (int i = pacmen.length; i < more.length; i++) {
+            more[i] = new Block('P', 0, 0, tileSize, tileSize);
+        }
+        pacmen = more;
+        crowdGhosts = ghostCount;
+        useLayout(layout); // Room for the extra ghosts
+        loadMap();
+    }
+
+    // Method to load the game map from the parsed layout, reusing the existing
+    // grid, ghost arrays and Pac-Man blocks
+    public void loadMap() {
+        // Walls and food go into the tile grid, which is allocated once and refilled
+        grid.load(layout);
+        levelStartTick = tick;
+        timers.clear(); // Nothing carries over to a fresh board
+        cherryActive = false;
+
+        // Put the moving objects back on their spawn tiles
+        ghosts.clear();
+        for (int i = 0; i < layout.ghostTypes.length; i++) {
+            ghosts.add(layout.ghostTypes[i], layout.ghostColumns[i] * tileSize, layout.ghostRows[i] * tileSize);
+        }
+        pacman.startX = layout.pacmanColumn * tileSize;
+        pacman.startY = layout.pacmanRow * tileSize;
+        if (pacmen.length > 1 || crowdGhosts > 0) {
+            placeCrowd();
+        }
+        for (Block p : pacmen) {
+            p.reset();
+            p.prevX = p.x;
+            p.prevY = p.y;
+            p.velocityX = 0;
+            p.velocityY = 0;
+            p.direction = 'R'; // Pac-Man starts out facing right
+            p.desiredDirection = NO_INPUT;
+        }
+        hash.clear(); // The ghosts may be fewer than on the last board
+        for (int i = 0; i < ghosts.count; i++) {
+            hash.update(i, ghosts.x[i] + ghosts.size / 2, ghosts.y[i] + ghosts.size / 2);
+        }
+        scheduleReleases();
+    }
+
+    // Spawn tiles of the Pac-Men and ghosts added by addCrowd(), spread evenly
+    // over the open tiles (in cell order) of the current board
+    private void placeCrowd() {
+        DistanceFields open = layout.distances(); // Numbers the open tiles
+        int crowdPacmen = pacmen.length - 1;
+        for (int i = 0; i < crowdPacmen; i++) {
+            int cell = open.cellOfNode[(int) ((2L * i + 1) * open.nodeCount / (2L * crowdPacmen))];
+            pacmen[1 + i].startX = cell % columnCount * tileSize;
+            pacmen[1 + i].startY = cell / columnCount * tileSize;
+        }
+        for (int i = 0; i < crowdGhosts; i++) {
+            int cell = open.cellOfNode[(int) ((long) i * open.nodeCount / crowdGhosts)];
+            ghosts.add(CROWD_GHOST_TYPES.charAt(i & 3), cell % columnCount * tileSize, cell / columnCount * tileSize);
+        }
+    }
+
+    // Advance the game by one tick, applying the input received since the last tick
+    public void step(char input) {
+        if (recorder != null && input != NO_INPUT) {
+            recorder.record(tick, input); // Inputs are all a replay needs, the rest is deterministic
+        }
+        if (gameOver) {
+            if (input == NO_INPUT) {
+                return; // Wait for a key before restarting
+            }
+            restart(); // Any key restarts the game once it is over
+        }
+        // Remember where the actors were so renderers can interpolate between ticks
+        for (Block p : pacmen) {
+            p.prevX = p.x;
+            p.prevY = p.y;
+        }
+        System.arraycopy(ghosts.x, 0, ghosts.prevX, 0, ghosts.count);
+        System.arraycopy(ghosts.y, 0, ghosts.prevY, 0, ghosts.count);
+        // Queue the arrow key as Pac-Man's next turn; move() takes it as soon as
+        // the maze allows, so a key pressed a little early is not lost
+        if (input == 'U' || input == 'D' || input == 'L' || input == 'R') {
+            pacman.desiredDirection = input;
+        }
+        move();
+        tick++;
+    }
+
+    // Method to update the game state (movement, collisions, scoring)
+    public void move() {
+        long start = timestamp();
+        // Turn the Pac-Men and move them along their corridors
+        for (Block p : pacmen) {
+            steerPacman(p);
+            p.x = wrapX(p.x + p.velocityX);
+            p.y += p.velocityY;
+        }
+        long pacmanDone = timestamp();
+
+        // Move the ghosts, in parallel chunks on a crowded board
+        ghostSeed = random.nextLong();
+        Ghosts g = ghosts;
+        if (ghostPool != null && g.count >= PARALLEL_THRESHOLD) {
+            if (chunks == null || chunks[chunks.length - 1].to != g.count) {
+                buildChunks();
+            }
+            allChunks.reinitialize();
+            ghostPool.invoke(allChunks);
+        } else {
+            moveGhosts(0, g.count);
+        }
+        // Then, in ghost order: eaten ghosts that made it home wait there briefly
+        // before coming out again, and the hash follows the ghosts that moved
+        for (int i = 0; i < g.count; i++) {
+            if (g.state[i] == Ghosts.EATEN && g.x[i] == g.startX[i] && g.y[i] == g.startY[i]) {
+                g.state[i] = Ghosts.HOUSE;
+                g.velocityX[i] = 0;
+                g.velocityY[i] = 0;
+                timers.schedule(tick + RESPAWN_TICKS, GHOST_RELEASED, i);
+            }
+            hash.update(i, g.x[i] + g.size / 2, g.y[i] + g.size / 2);
+        }
+
+        // Check each Pac-Man against the ghosts near him
+        for (Block p : pacmen) {
+            if (caught(p)) {
+                lives -= 1; // Lose a life
+                if (lives == 0) { // Check if game is over
+                    gameOver = true;
+                    if (stats != null) { // The final tick ends here, in the ghost phase
+                        long end = timestamp();
+                        stats.recordTick(tick, pacmanDone - start, end - pacmanDone, 0, -1, end - start);
+                    }
+                    return;
+                }
+                if (pacmen.length == 1) {
+                    resetPositions(); // Reset positions after losing a life
+                    break;
+                }
+                respawnInCrowd(p); // The other Pac-Men and the ghosts carry on
+            }
+        }
+        long ghostsDone = timestamp();
+
+        // Fire the timed effects that are due (cherry expiry, end of fright, releases)
+        while (timers.hasDue(tick)) {
+            long event = timers.pop();
+            fire(TickScheduler.kind(event), TickScheduler.argument(event));
+        }
+
+        // Eat the food dots under Pac-Man and update score (10 points each); the
+        // grid logs the eaten cells, which tells power pellets apart
+        int firstEaten = grid.eatenCount;
+        for (Block p : pacmen) {
+            score += 10 * grid.eatFood(p.x, p.y, p.width, p.height);
+        }
+        for (int e = firstEaten; e < grid.eatenCount; e++) {
+            if (layout.isPower(grid.eatenCells[e])) {
+                score += POWER_PELLET_SCORE - 10;
+                frightenGhosts();
+            }
+        }
+
+        // Handle cherry collision (its timeout is a scheduled event)
+        for (int k = 0; k < pacmen.length && cherryActive; k++) {
+            if (collision(pacmen[k], cherry)) { // Pac-Man collects cherry
+                score += 100; // Add bonus points
+                cherryActive = false; // Remove cherry
+                timers.cancel(CHERRY_EXPIRES);
+            }
+        }
+
+        // Randomly spawn a cherry if none exists (1 in 200 chance per frame)
+        if (!cherryActive && random.nextInt(200) == 0) {
+            spawnCherry();
+        }
+        long foodDone = timestamp();
+
+        // If all food is eaten, move on to the next board (or reset this one)
+        long levelReload = -1;
+        if (grid.foodCount == 0) {
+            levelsCleared++;
+            if (nextLevel != null) {
+                useLayout(nextLevel.get());
+            }
+            loadMap();
+            resetPositions();
+            levelReload = timestamp() - foodDone;
+        }
+
+        if (stats != null) {
+            stats.recordTick(tick, pacmanDone - start, ghostsDone - pacmanDone, foodDone - ghostsDone,
+                    levelReload, timestamp() - start);
+        }
+    }
+
+    // Steer and move ghosts [from, to). Only writes those ghosts' own slots, and
+    // only reads the Pac-Men and the board, so slices can run in parallel; the
+    // brains must therefore be safe to call from several threads at once.
+    private void moveGhosts(int from, int to) {
+        Ghosts g = ghosts;
+        for (int i = from; i < to; i++) {
+            if (g.state[i] == Ghosts.HOUSE) {
+                continue; // Waits on its spawn tile until it is released
+            }
+            // Whenever a ghost stands exactly on a tile its brain picks the exit to
+            // take, so ghosts only ever move along open corridors
+            if (g.x[i] % tileSize == 0 && g.y[i] % tileSize == 0) {
+                if (g.state[i] == Ghosts.EATEN && g.x[i] == g.startX[i] && g.y[i] == g.startY[i]) {
+                    continue; // Back home; move() puts it in the house
+                }
+                g.direction[i] = decideGhost(i);
+                g.updateVelocity(i, tileSize);
+                // Stay put if even that exit is blocked (e.g. a boxed-in spawn)
+                if ((layout.exits[ghostCell(i)] & MazeLayout.exitBit(g.direction[i])) == 0) {
+                    g.velocityX[i] = 0;
+                    g.velocityY[i] = 0;
+                }
+            }
+            g.x[i] = wrapX(g.x[i] + g.velocityX[i]); // Move ghost in X direction
+            g.y[i] += g.velocityY[i]; // Move ghost in Y direction
+        }
+    }
+
+    // Split the ghosts into CHUNK_SIZE tasks for ghostPool
+    private void buildChunks() {
+        GhostChunk[] built = new GhostChunk[(ghosts.count + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        for (int k = 0; k < built.length; k++) {
+            built[k] = new GhostChunk(k * CHUNK_SIZE, Math.min((k + 1) * CHUNK_SIZE, ghosts.count));
+        }
+        chunks = built;
+        allChunks = new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                for (GhostChunk chunk : built) {
+                    chunk.reinitialize(); // Tasks are reused every tick
+                }
+                invokeAll(built);
+            }
+        };
+    }
+
+    // Resolve a Pac-Man's collisions with the ghosts touching him: frightened
+    // ghosts are eaten, and any other ghost not already eaten catches him.
+    // Returns true if he was caught.
+    private boolean caught(Block p) {
+        Ghosts g = ghosts;
+        int n = touchingGhosts(p, touching);
+        for (int k = 0; k < n; k++) {
+            int i = touching[k];
+            if (g.state[i] == Ghosts.FRIGHTENED) { // Pac-Man eats a frightened ghost
+                score += GHOST_SCORE << Math.min(ghostsEatenInChain, 3); // 200, 400, 800, 1600
+                ghostsEatenInChain++;
+                g.state[i] = Ghosts.EATEN;
+            } else if (g.state[i] != Ghosts.EATEN) { // Pac-Man hits a ghost
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Put the ghosts touching a Pac-Man into `out` and return how many there
+    // are. Only the 3x3 hash buckets around his centre are searched: actors are
+    // no bigger than a bucket, so a ghost touching him has its centre in one of
+    // them. Uses the ghost positions of the last tick (or loadMap()).
+    int touchingGhosts(Block p, int[] out) {
+        int bucket = hash.bucketAt(p.x + p.width / 2, p.y + p.height / 2);
+        int column = bucket % hash.columns;
+        int row = bucket / hash.columns;
+        int n = 0;
+        for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, hash.rows - 1); r++) {
+            for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, hash.columns - 1); c++) {
+                for (int i = hash.first(r * hash.columns + c); i >= 0; i = hash.next(i)) {
+                    if (ghostCollision(i, p)) {
+                        out[n++] = i;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    // Direction a ghost standing exactly on a tile leaves it in, by state
+    private char decideGhost(int i) {
+        byte state = ghosts.state[i];
+        if (state == Ghosts.FRIGHTENED) {
+            return frightenedBrain.decide(this, i);
+        } else if (state == Ghosts.EATEN) {
+            return GhostBrain.steerTowards(this, i, cellAt(ghosts.startX[i], ghosts.startY[i]));
+        }
+        return ghostBrain.decide(this, i);
+    }
+
+    // Handle a scheduled event
+    private void fire(int kind, int argument) {
+        if (kind == CHERRY_EXPIRES) {
+            cherryActive = false;
+        } else if (kind == FRIGHTENED_ENDS) {
+            for (int i = 0; i < ghosts.count; i++) {
+                if (ghosts.state[i] == Ghosts.FRIGHTENED) {
+                    ghosts.state[i] = Ghosts.NORMAL;
+                }
+            }
+        } else if (kind == GHOST_RELEASED && argument < ghosts.count && ghosts.state[argument] == Ghosts.HOUSE) {
+            ghosts.state[argument] = Ghosts.NORMAL;
+        }
+    }
+
+    // A power pellet was eaten: every ghost out on the board turns around and
+    // becomes frightened, and the frightened period starts over
+    private void frightenGhosts() {
+        ghostsEatenInChain = 0;
+        for (int i = 0; i < ghosts.count; i++) {
+            if (ghosts.state[i] == Ghosts.NORMAL || ghosts.state[i] == Ghosts.FRIGHTENED) {
+                if (ghosts.state[i] == Ghosts.NORMAL) {
+                    ghosts.direction[i] = GhostBrain.reverse(ghosts.direction[i]);
+                    ghosts.updateVelocity(i, tileSize);
+                }
+                ghosts.state[i] = Ghosts.FRIGHTENED;
+            }
+        }
+        timers.cancel(FRIGHTENED_ENDS);
+        timers.schedule(tick + FRIGHTENED_TICKS, FRIGHTENED_ENDS, 0);
+    }
+
+    // Schedule the release of every ghost from its spawn tile: the ghosts leave in
+    // four groups (by spawn order), one group every RELEASE_INTERVAL_TICKS
+    private void scheduleReleases() {
+        timers.cancel(GHOST_RELEASED);
+        timers.cancel(FRIGHTENED_ENDS);
+        for (int i = 0; i < ghosts.count; i++) {
+            timers.schedule(tick + (long) (i & 3) * RELEASE_INTERVAL_TICKS, GHOST_RELEASED, i);
+        }
+    }
+
+    // Apply a Pac-Man's queued turn and stop him at walls. Reversing is allowed
+    // anywhere; any other turn, and carrying on straight, is checked against the
+    // exit mask of the tile he is on, which only happens when he is exactly on it.
+    private void steerPacman(Block p) {
+        char desired = p.desiredDirection;
+        if (desired != NO_INPUT && desired == GhostBrain.reverse(p.direction)
+                && (p.velocityX != 0 || p.velocityY != 0)) {
+            p.direction = desired;
+            p.desiredDirection = NO_INPUT;
+            p.updateVelocity(tileSize);
+            return;
+        }
+        if (p.x % tileSize != 0 || p.y % tileSize != 0) {
+            return; // Between tiles: keep going
+        }
+        int exits = layout.exits[pacmanCell(p)];
+        if (desired != NO_INPUT && (exits & MazeLayout.exitBit(desired)) != 0) {
+            p.direction = desired;
+            p.desiredDirection = NO_INPUT;
+            p.updateVelocity(tileSize);
+        } else if ((exits & MazeLayout.exitBit(p.direction)) == 0) {
+            p.velocityX = 0; // Wall ahead: stop, keeping any queued turn
+            p.velocityY = 0;
+        }
+    }
+
+    // X-coordinate of an actor after wrapping through a tunnel: an actor that has
+    // completely left one side of the board reappears on the other
+    int wrapX(int x) {
+        if (x <= -tileSize) {
+            return x + boardWidth;
+        } else if (x >= boardWidth) {
+            return x - boardWidth;
+        }
+        return x;
+    }
+
+    // Current time for the phase timers, or 0 when the game is not instrumented
+    private long timestamp() {
+        return stats != null ? System.nanoTime() : 0;
+    }
+
+    // Helper method to spawn a cherry in a valid position (not inside walls)
+    void spawnCherry() {
+        int r, c;
+        do {
+            c = random.nextInt(columnCount); // Random column
+            r = random.nextInt(rowCount); // Random row
+        } while (grid.isWall(r, c)); // Repeat until the tile is not a wall
+        cherry.x = c * tileSize; // Spawn cherry
+        cherry.y = r * tileSize;
+        cherryActive = true;
+        timers.cancel(CHERRY_EXPIRES);
+        timers.schedule(tick + CHERRY_LIFETIME_TICKS + 1, CHERRY_EXPIRES, 0); // Gone after 5 seconds
+    }
+
+    // Method to check for collision between two moving blocks (walls and food use the grid)
+    public boolean collision(Block a, Block b) {
+        return overlaps(a.x, a.y, a.width, a.height, b.x, b.y, b.width, b.height);
+    }
+
+    // Check whether ghost i touches Pac-Man
+    public boolean ghostCollision(int i) {
+        return ghostCollision(i, pacman);
+    }
+
+    // Check whether ghost i touches the given Pac-Man
+    boolean ghostCollision(int i, Block p) {
+        return overlaps(ghosts.x[i], ghosts.y[i], ghosts.size, ghosts.size, p.x, p.y, p.width, p.height);
+    }
+
+    // Pac-Man nearest to ghost i in a straight line, the one its brain goes after
+    Block nearestPacman(int ghost) {
+        Block nearest = pacman;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (int k = 0; k < pacmen.length && pacmen.length > 1; k++) {
+            Block p = pacmen[k];
+            int distance = Math.abs(p.x - ghosts.x[ghost]) + Math.abs(p.y - ghosts.y[ghost]);
+            if (distance < nearestDistance) {
+                nearest = p;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    // Random int in [0, bound) for a choice ghost i makes this tick. It depends
+    // only on the tick's ghostSeed and the ghost, not on the order ghosts are
+    // moved in; a ghost makes at most one choice per tick.
+    int ghostRandom(int ghost, int bound) {
+        return Rng.bounded(Rng.mix(ghostSeed + (ghost + 1) * Rng.GOLDEN_GAMMA), bound);
+    }
+
+    // Cell index of the tile under the centre of ghost i
+    int ghostCell(int i) {
+        return cellAt(ghosts.x[i] + ghosts.size / 2, ghosts.y[i] + ghosts.size / 2);
+    }
+
+    // Cell index of the tile under the centre of Pac-Man
+    int pacmanCell() {
+        return pacmanCell(pacman);
+    }
+
+    // Cell index of the tile under the centre of the given Pac-Man
+    int pacmanCell(Block p) {
+        return cellAt(p.x + p.width / 2, p.y + p.height / 2);
+    }
+
+    // Cell index of the tile containing a pixel, clamped to the board
+    int cellAt(int x, int y) {
+        int c = Math.min(Math.max(Math.floorDiv(x, tileSize), 0), columnCount - 1);
+        int r = Math.min(Math.max(Math.floorDiv(y, tileSize), 0), rowCount - 1);
+        return r * columnCount + c;
+    }
+
+    // Cell index of the open tile next to a cell in the given direction (through
+    // a tunnel if need be), or -1 for a wall or the edge of the board
+    int neighbourCell(int cell, char direction) {
+        return layout.neighbour(cell, direction);
+    }
+
+    // Check whether two rectangles overlap
+    static boolean overlaps(int ax, int ay, int aw, int ah, int bx, int by, int bw, int bh) {
+        return ax < bx + bw && // Check X overlap
+                ax + aw > bx &&
+                ay < by + bh && // Check Y overlap
+                ay + ah > by;
+    }
+
+    // Reset Pac-Man and ghosts to their starting positions
+    public void resetPositions() {
+        for (Block p : pacmen) {
+            respawn(p);
+        }
+        for (int i = 0; i < ghosts.count; i++) {
+            ghosts.reset(i); // Reset ghost position; its brain picks a direction once released
+            ghosts.velocityX[i] = 0;
+            ghosts.velocityY[i] = 0;
+        }
+        scheduleReleases();
+    }
+
+    // Put one Pac-Man back on his spawn tile, standing still
+    private void respawn(Block p) {
+        p.reset(); // Reset Pac-Man position
+        p.velocityX = 0; // Stop Pac-Man movement
+        p.velocityY = 0;
+        p.desiredDirection = NO_INPUT; // Wait for a fresh key after losing a life
+    }
+
+    // Put a Pac-Man caught in a crowd back on the board, standing still, on a
+    // random open tile with no ghost within RESPAWN_CLEARANCE tiles (or on the
+    // last tile tried if none of RESPAWN_TRIES is clear). The ghosts that caught
+    // him stay where they are, so his spawn tile may not be safe.
+    private void respawnInCrowd(Block p) {
+        respawn(p);
+        DistanceFields open = layout.distances(); // Numbers the open tiles
+        for (int attempt = 0; attempt < RESPAWN_TRIES; attempt++) {
+            int cell = open.cellOfNode[random.nextInt(open.nodeCount)];
+            p.x = cell % columnCount * tileSize;
+            p.y = cell / columnCount * tileSize;
+            if (!ghostNear(p.x + tileSize / 2, p.y + tileSize / 2, RESPAWN_CLEARANCE * tileSize)) {
+                break;
+            }
+        }
+        p.prevX = p.x;
+        p.prevY = p.y;
+    }
+
+    // Whether a ghost's centre is within `range` pixels (on both axes) of a
+    // point; range must not exceed a hash bucket
+    private boolean ghostNear(int x, int y, int range) {
+        int bucket = hash.bucketAt(x, y);
+        int column = bucket % hash.columns;
+        int row = bucket / hash.columns;
+        for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, hash.rows - 1); r++) {
+            for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, hash.columns - 1); c++) {
+                for (int i = hash.first(r * hash.columns + c); i >= 0; i = hash.next(i)) {
+                    if (Math.abs(ghosts.x[i] + ghosts.size / 2 - x) <= range
+                            && Math.abs(ghosts.y[i] + ghosts.size / 2 - y) <= range) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Independent copy of this game in its current state, e.g. for a search that
+    // plays out moves without touching the real game. The copy shares the ghost
+    // brains but not the next-level supplier (it replays the same board once
+    // cleared), and it neither records, collects timings nor uses the ghost pool.
+    Simulation fork() {
+        Simulation copy = new Simulation(layout, tileSize, seed);
+        copy.ghostBrain = ghostBrain;
+        copy.frightenedBrain = frightenedBrain;
+        if (pacmen.length > 1 || crowdGhosts > 0) {
+            copy.addCrowd(pacmen.length - 1, crowdGhosts);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Snapshot.size(this));
+        Snapshot.save(this, buffer);
+        buffer.flip();
+        Snapshot.restore(copy, buffer);
+        return copy;
+    }
+
+    // Start a new game with another seed, in the same state as a game newly
+    // constructed on the current board, reusing all of this one's arrays (e.g.
+    // for the next episode of a training environment)
+    void newGame(long seed) {
+        this.seed = seed;
+        random.state = seed;
+        tick = 0;
+        levelsCleared = 0;
+        ghostsEatenInChain = 0;
+        score = 0;
+        lives = 3;
+        gameOver = false;
+        cherry.reset(); // Back where a new game's unspawned cherry sits
+        loadMap();
+    }
+
+    // Start a new game on the same board after a game over
+    public void restart() {
+        loadMap();
+        resetPositions();
+        cherryActive = false; // Clear any leftover cherry
+        lives = 3; // Restore lives
+        score = 0; // Reset score
+        gameOver = false; // Clear game over flag
+    }
+}
@@ -0,0 +1,178 @@
+import java.nio.ByteBuffer;
+
+// Binary snapshots of a Simulation's complete game state, for quick-saves,
+// rewinding (RewindBuffer) and forking games for search. Saving and restoring
+// copy a few hundred bytes of primitives in and out of a ByteBuffer and
+// allocate nothing. The board itself is not stored: a snapshot only restores
+// into a simulation on the same layout (the restore() taking a layout switches
+// to it first).
+//
+//   int     magic "PMSS"
+//   byte    format version
+//   short   row count, short column count, short Pac-Man count, short ghost count
+//   long    tick, long tick the level started on
+//   int     levels cleared, int score, int lives, int ghosts eaten in the chain
+//   byte    flags: GAME_OVER, CHERRY_ACTIVE
+//   long    random number generator state
+//   int     food dots left, then the food bitset: (rows x columns + 63) / 64 longs
+//   3 ints  each Pac-Man: x, y, motion (see motion())
+//   3 ints  each ghost: x, y, motion
+//   2 ints  cherry: x, y
+//   int     pending timed events, long scheduler sequence number, then each
+//           event as three longs (due tick, sequence number, kind and argument)
+//
+// Previous positions are not stored: a restored game starts its next frame
+// without interpolation, which does not affect the rules.
+public class Snapshot {
+    static final int MAGIC = 0x504D5353; // "PMSS"
+    static final byte VERSION = 2; // Current format version (2: several Pac-Men)
+    static final byte GAME_OVER = 1; // Flag bits
+    static final byte CHERRY_ACTIVE = 2;
+    static final int MOVING = 1 << 16; // Motion bit: the actor's velocity follows its direction
+
+    // Bytes of a snapshot of a game on the given board with n pending events
+    static int size(int rowCount, int columnCount, int pacmanCount, int ghostCount, int events) {
+        int foodWords = (rowCount * columnCount + 63) >> 6;
+        return 4 + 1 + 4 * 2 + 2 * 8 + 4 * 4 + 1 + 8 + 4 + 8 * foodWords + 12 * (pacmanCount + ghostCount) + 8
+                + 12 + 24 * events;
+    }
+
+    // Bytes of a snapshot of the game in its current state
+    static int size(Simulation sim) {
+        return size(sim.rowCount, sim.columnCount, sim.pacmen.length, sim.ghosts.count, sim.timers.size());
+    }
+
+    // Largest snapshot of a game on the given board: at most one release per
+    // ghost, the end of the frightened period and the cherry expiry are pending
+    static int maxSize(MazeLayout layout) {
+        return size(layout.rowCount, layout.columnCount, 1, layout.ghostTypes.length,
+                layout.ghostTypes.length + 2);
+    }
+
+    // Write the game state at the buffer's position
+    static void save(Simulation sim, ByteBuffer out) {
+        out.putInt(MAGIC);
+        out.put(VERSION);
+        out.putShort((short) sim.rowCount);
+        out.putShort((short) sim.columnCount);
+        out.putShort((short) sim.pacmen.length);
+        out.putShort((short) sim.ghosts.count);
+        out.putLong(sim.tick);
+        out.putLong(sim.levelStartTick);
+        out.putInt(sim.levelsCleared);
+        out.putInt(sim.score);
+        out.putInt(sim.lives);
+        out.putInt(sim.ghostsEatenInChain);
+        out.put((byte) ((sim.gameOver ? GAME_OVER : 0) | (sim.cherryActive ? CHERRY_ACTIVE : 0)));
+        out.putLong(sim.random.state);
+
+        TileGrid grid = sim.grid;
+        out.putInt(grid.foodCount);
+        for (long word : grid.food) {
+            out.putLong(word);
+        }
+
+        for (Block pacman : sim.pacmen) {
+            out.putInt(pacman.x);
+            out.putInt(pacman.y);
+            out.putInt(motion(pacman.direction, pacman.desiredDirection, pacman.velocityX | pacman.velocityY));
+        }
+        Ghosts ghosts = sim.ghosts;
+        for (int i = 0; i < ghosts.count; i++) {
+            out.putInt(ghosts.x[i]);
+            out.putInt(ghosts.y[i]);
+            out.putInt(motion(ghosts.direction[i], ghosts.state[i], ghosts.velocityX[i] | ghosts.velocityY[i]));
+        }
+        out.putInt(sim.cherry.x);
+        out.putInt(sim.cherry.y);
+        sim.timers.save(out);
+    }
+
+    // Restore a snapshot taken on the given board, switching the game to that
+    // board first if it has moved on to another one since
+    static void restore(Simulation sim, MazeLayout layout, ByteBuffer in) {
+        if (sim.layout != layout) {
+            sim.useLayout(layout);
+            sim.loadMap(); // Ghost types and spawn tiles of the board
+        }
+        restore(sim, in);
+    }
+
+    // Replace the game state with the snapshot at the buffer's position; the
+    // simulation must be on the board the snapshot was taken on
+    static void restore(Simulation sim, ByteBuffer in) {
+        if (in.remaining() < size(0, 0, 0, 0, 0) || in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a game snapshot");
+        }
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version " + version);
+        }
+        int rows = in.getShort();
+        int columns = in.getShort();
+        int pacmanCount = in.getShort();
+        int ghostCount = in.getShort();
+        if (rows != sim.rowCount || columns != sim.columnCount || pacmanCount != sim.pacmen.length
+                || ghostCount != sim.ghosts.count) {
+            throw new IllegalArgumentException("Snapshot of a " + rows + "x" + columns + " board with "
+                    + pacmanCount + " Pac-Men and " + ghostCount + " ghosts does not fit a " + sim.rowCount + "x"
+                    + sim.columnCount + " board with " + sim.pacmen.length + " and " + sim.ghosts.count);
+        }
+        if (in.remaining() < size(rows, columns, pacmanCount, ghostCount, 0) - 13) {
+            throw new IllegalArgumentException("Truncated game snapshot");
+        }
+        sim.tick = in.getLong();
+        sim.levelStartTick = in.getLong();
+        sim.levelsCleared = in.getInt();
+        sim.score = in.getInt();
+        sim.lives = in.getInt();
+        sim.ghostsEatenInChain = in.getInt();
+        byte flags = in.get();
+        sim.gameOver = (flags & GAME_OVER) != 0;
+        sim.cherryActive = (flags & CHERRY_ACTIVE) != 0;
+        sim.random.state = in.getLong();
+
+        TileGrid grid = sim.grid;
+        grid.foodCount = in.getInt();
+        for (int i = 0; i < grid.food.length; i++) {
+            grid.food[i] = in.getLong();
+        }
+        grid.eatenCount = 0;
+        grid.generation++; // Cached food layers must be rebuilt
+
+        int tileSize = sim.tileSize;
+        for (Block pacman : sim.pacmen) {
+            pacman.x = pacman.prevX = in.getInt();
+            pacman.y = pacman.prevY = in.getInt();
+            int motion = in.getInt();
+            pacman.direction = (char) (motion & 0xFF);
+            pacman.desiredDirection = (char) ((motion >> 8) & 0xFF);
+            pacman.velocityX = (motion & MOVING) != 0 ? Block.velocityX(pacman.direction, tileSize) : 0;
+            pacman.velocityY = (motion & MOVING) != 0 ? Block.velocityY(pacman.direction, tileSize) : 0;
+        }
+        Ghosts ghosts = sim.ghosts;
+        for (int i = 0; i < ghostCount; i++) {
+            ghosts.x[i] = ghosts.prevX[i] = in.getInt();
+            ghosts.y[i] = ghosts.prevY[i] = in.getInt();
+            int motion = in.getInt();
+            ghosts.direction[i] = (char) (motion & 0xFF);
+            ghosts.state[i] = (byte) (motion >> 8);
+            ghosts.velocityX[i] = 0;
+            ghosts.velocityY[i] = 0;
+            if ((motion & MOVING) != 0) {
+                ghosts.updateVelocity(i, tileSize);
+            }
+        }
+        sim.cherry.x = in.getInt();
+        sim.cherry.y = in.getInt();
+        sim.timers.restore(in);
+    }
+
+    // Pack an actor's direction, a second byte (Pac-Man's queued turn or a
+    // ghost's state) and whether it is moving into one int. Actors only ever
+    // stand still or move at full speed in their direction, so a single bit
+    // restores the velocity.
+    static int motion(char direction, int extra, int velocity) {
+        return (direction & 0xFF) | (extra & 0xFF) << 8 | (velocity != 0 ? MOVING : 0);
+    }
+}
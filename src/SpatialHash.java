@@ -0,0 +1,109 @@
+import java.util.Arrays;
+
+// Uniform grid over the board for finding the actors near a point without
+// checking every actor. Each bucket is a square of pixels holding its actors in
+// an intrusive doubly linked list over int arrays, so moving an actor to another
+// bucket is O(1) and allocation-free. The grid is kept up to date incrementally:
+// an actor that stays inside its bucket (most actors, most ticks) costs a single
+// comparison, and nothing is ever rebuilt from scratch.
+public class SpatialHash {
+    final int bucketSize; // Width and height of a bucket in pixels
+    final int columns; // Number of bucket columns
+    final int rows; // Number of bucket rows
+    int relinks = 0; // Actors moved to another bucket since the last reset of this counter
+
+    private final int[] head; // First actor in each bucket, -1 when empty
+    private int[] next; // Next actor in the same bucket, -1 at the end
+    private int[] previous; // Previous actor in the same bucket, -1 at the start
+    private int[] bucketOf; // Bucket each actor is in, -1 when not in the grid
+
+    // Constructor to cover a board of the given size in pixels with room for the
+    // given number of actors
+    SpatialHash(int width, int height, int bucketSize, int capacity) {
+        this.bucketSize = bucketSize;
+        this.columns = Math.max(1, (width + bucketSize - 1) / bucketSize);
+        this.rows = Math.max(1, (height + bucketSize - 1) / bucketSize);
+        this.head = new int[columns * rows];
+        Arrays.fill(head, -1);
+        ensureCapacity(capacity);
+    }
+
+    // Grow the per-actor arrays if they cannot hold the given number of actors
+    void ensureCapacity(int capacity) {
+        int old = next == null ? 0 : next.length;
+        if (next != null && old >= capacity) {
+            return;
+        }
+        next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+        previous = previous == null ? new int[capacity] : Arrays.copyOf(previous, capacity);
+        bucketOf = bucketOf == null ? new int[capacity] : Arrays.copyOf(bucketOf, capacity);
+        Arrays.fill(bucketOf, old, capacity, -1);
+    }
+
+    // Remove every actor
+    void clear() {
+        Arrays.fill(head, -1);
+        Arrays.fill(bucketOf, -1);
+    }
+
+    // Bucket containing a pixel, clamped to the grid
+    int bucketAt(int x, int y) {
+        int c = Math.min(Math.max(Math.floorDiv(x, bucketSize), 0), columns - 1);
+        int r = Math.min(Math.max(Math.floorDiv(y, bucketSize), 0), rows - 1);
+        return r * columns + c;
+    }
+
+    // Put an actor at a pixel, moving it between buckets only if it left its own
+    void update(int actor, int x, int y) {
+        int bucket = bucketAt(x, y);
+        int current = bucketOf[actor];
+        if (bucket == current) {
+            return;
+        }
+        if (current >= 0) {
+            unlink(actor, current);
+        }
+        // Push onto the front of the new bucket's list
+        int first = head[bucket];
+        next[actor] = first;
+        previous[actor] = -1;
+        if (first >= 0) {
+            previous[first] = actor;
+        }
+        head[bucket] = actor;
+        bucketOf[actor] = bucket;
+        relinks++;
+    }
+
+    // Take an actor out of the grid
+    void remove(int actor) {
+        int current = bucketOf[actor];
+        if (current >= 0) {
+            unlink(actor, current);
+            bucketOf[actor] = -1;
+        }
+    }
+
+    // First actor in a bucket, or -1 when it is empty; walk on with next()
+    int first(int bucket) {
+        return head[bucket];
+    }
+
+    // Actor after the given one in its bucket, or -1 at the end
+    int next(int actor) {
+        return next[actor];
+    }
+
+    private void unlink(int actor, int bucket) {
+        int before = previous[actor];
+        int after = next[actor];
+        if (before >= 0) {
+            next[before] = after;
+        } else {
+            head[bucket] = after;
+        }
+        if (after >= 0) {
+            previous[after] = before;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.imageio.ImageIO;
+
+// Every sprite of the game packed side by side into one image in the screen's
+// native format, each already scaled to the tile size, so drawing a sprite is a
+// plain unscaled copy out of the atlas. The sprites every board needs are
+// decoded and scaled in parallel when the atlas is created. Rarely used ones
+// (the frightened ghost) are decoded in the background into images of their
+// own, and a stand-in sprite from the atlas is drawn until they are ready, so
+// drawing never waits for a decode and the atlas is never written once it is
+// shared. Atlases are shared by every renderer using the same tile size.
+public class SpriteAtlas {
+    // Sprite ids; the eager ones are also the atlas slots
+    static final int WALL = 0;
+    static final int BLUE_GHOST = 1;
+    static final int ORANGE_GHOST = 2;
+    static final int PINK_GHOST = 3;
+    static final int RED_GHOST = 4;
+    static final int PACMAN_UP = 5;
+    static final int PACMAN_DOWN = 6;
+    static final int PACMAN_LEFT = 7;
+    static final int PACMAN_RIGHT = 8;
+    static final int CHERRY = 9;
+    static final int POWER_FOOD = 10; // On almost every board, so loaded up front
+    static final int SCARED_GHOST = 11; // Loaded in the background
+
+    static final int EAGER_SPRITES = 11; // Sprites loaded up front (ids below this)
+    static final String[] FILES = { "wall.png", "blueGhost.png", "orangeGhost.png", "pinkGhost.png",
+            "redGhost.png", "pacmanUp.png", "pacmanDown.png", "pacmanLeft.png", "pacmanRight.png",
+            "cherry.png", "powerFood.png", "scaredGhost.png" };
+    static final int[] STAND_INS = { BLUE_GHOST }; // Drawn for each background sprite until it is loaded
+
+    private static final ConcurrentHashMap<Integer, SpriteAtlas> SHARED =
+            new ConcurrentHashMap<Integer, SpriteAtlas>(); // By tile size
+
+    final int tileSize; // Width and height of every sprite in the atlas
+    final long loadNanos; // Time taken to build the atlas with its eager sprites
+    private final BufferedImage atlas; // Eager sprites in one row, one tile each
+    // Background sprites by id - EAGER_SPRITES; a future's completion publishes
+    // the finished image
+    private final List<CompletableFuture<BufferedImage>> lazy = new ArrayList<CompletableFuture<BufferedImage>>();
+
+    // Constructor to load the eager sprites in parallel and pack them
+    private SpriteAtlas(int tileSize) {
+        long start = System.nanoTime();
+        this.tileSize = tileSize;
+        this.atlas = GameRenderer.createLayer(tileSize * EAGER_SPRITES, tileSize, Transparency.TRANSLUCENT);
+
+        // Decoding and scaling dominate, so each sprite gets its own task
+        List<CompletableFuture<BufferedImage>> sprites = new ArrayList<CompletableFuture<BufferedImage>>();
+        for (int id = 0; id < EAGER_SPRITES; id++) {
+            String file = FILES[id];
+            sprites.add(CompletableFuture.supplyAsync(() -> loadScaled(file, tileSize)));
+        }
+        for (int id = EAGER_SPRITES; id < FILES.length; id++) {
+            String file = FILES[id];
+            lazy.add(CompletableFuture.supplyAsync(() -> loadAlone(file, tileSize)));
+        }
+        // Packing draws into the atlas image, so it is done on this thread
+        // before the atlas is shared
+        Graphics2D g = atlas.createGraphics();
+        for (int id = 0; id < EAGER_SPRITES; id++) {
+            g.drawImage(sprites.get(id).join(), id * tileSize, 0, null);
+        }
+        g.dispose();
+        loadNanos = System.nanoTime() - start;
+    }
+
+    // Atlas for the given tile size, built on the first call and shared afterwards
+    static SpriteAtlas forTileSize(int tileSize) {
+        return SHARED.computeIfAbsent(tileSize, SpriteAtlas::new);
+    }
+
+    // Draw a sprite with its top-left corner at (x, y). Never blocks: a
+    // background sprite that is not loaded yet is drawn as its stand-in.
+    void draw(Graphics g, int sprite, int x, int y) {
+        if (sprite >= EAGER_SPRITES) {
+            BufferedImage image = lazy.get(sprite - EAGER_SPRITES).getNow(null);
+            if (image != null) {
+                g.drawImage(image, x, y, null);
+                return;
+            }
+            sprite = STAND_INS[sprite - EAGER_SPRITES];
+        }
+        int sourceX = sprite * tileSize;
+        g.drawImage(atlas, x, y, x + tileSize, y + tileSize, sourceX, 0, sourceX + tileSize, tileSize, null);
+    }
+
+    // One-line summary of how long the atlas took to build
+    String report() {
+        return String.format("Sprites: %d loaded in %.1f ms (%d more in the background), %dx%d atlas",
+                EAGER_SPRITES, loadNanos / 1e6, FILES.length - EAGER_SPRITES, atlas.getWidth(), atlas.getHeight());
+    }
+
+    // Decode and scale a background sprite into an image of its own in the
+    // screen's native format
+    private static BufferedImage loadAlone(String file, int tileSize) {
+        BufferedImage image = GameRenderer.createLayer(tileSize, tileSize, Transparency.TRANSLUCENT);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(loadScaled(file, tileSize), 0, 0, null);
+        g.dispose();
+        return image;
+    }
+
+    // Decode a sprite from the class path and scale it to the tile size
+    private static BufferedImage loadScaled(String file, int tileSize) {
+        URL url = SpriteAtlas.class.getResource("./" + file);
+        if (url == null) {
+            throw new IllegalStateException("Missing sprite " + file);
+        }
+        BufferedImage source;
+        try {
+            source = ImageIO.read(url);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read sprite " + file, e);
+        }
+        BufferedImage scaled = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, tileSize, tileSize, null);
+        g.dispose();
+        return scaled;
+    }
+}
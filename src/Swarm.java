@@ -0,0 +1,161 @@
+import java.util.concurrent.ForkJoinPool;
+
+// Stress mode: thousands of ghosts and several Pac-Men on a generated maze
+// hundreds of tiles across (see MazeGenerator), run headless as fast as it goes
+// to see whether the tick holds 60 Hz. It is an ordinary Simulation with a
+// crowd added (see Simulation.addCrowd()), so the usual rules apply: pellets,
+// the ghost brains, release from the spawn tiles and the tick scheduler.
+// Nothing is checked pairwise: walls come from the layout's exit masks, and
+// Pac-Man/ghost collisions only look at the ghosts in the spatial hash buckets
+// around each Pac-Man. Once the ghost count passes
+// Simulation.PARALLEL_THRESHOLD the ghosts are moved in parallel chunks on a
+// pool of the given size; a run is the same whatever the number of threads.
+// The Pac-Men wander on their own and never run out of lives; a caught one
+// comes back on a random tile clear of ghosts. Deaths per second of game time
+// are reported as a health check: a high rate means Pac-Men are being caught
+// over and over rather than playing.
+//
+// Usage: java Swarm [--size=N] [--ghosts=N] [--pacmen=N] [--threads=N]
+//                   [--seconds=N] [--seed=N]
+public class Swarm implements AutoCloseable {
+    static final int TILE_SIZE = 32; // Tile size of the swarm board
+    static final long TICK_BUDGET_NANOS = 1_000_000_000L / 60; // Longest tick that still holds 60 Hz
+
+    final Simulation sim; // The game, with the crowd added
+    final Rng random; // Steers the Pac-Men
+    final TickStats stats = new TickStats(); // Per-phase tick timings
+
+    // Constructor to set up a game on the layout with the given numbers of ghosts
+    // and Pac-Men on top of its own
+    Swarm(MazeLayout layout, int ghostCount, int pacmanCount, int threads, long seed) {
+        sim = new Simulation(layout, TILE_SIZE, seed);
+        sim.addCrowd(Math.max(pacmanCount - 1, 0), ghostCount);
+        sim.lives = Integer.MAX_VALUE; // Count the deaths instead of ending the game
+        sim.stats = stats;
+        if (threads > 1) {
+            sim.ghostPool = new ForkJoinPool(threads);
+        }
+        random = new Rng(~seed);
+    }
+
+    // Advance the swarm by one tick
+    void step() {
+        steerPacmen();
+        sim.step(Simulation.NO_INPUT);
+    }
+
+    // Steer the Pac-Men the way a player might: on reaching a tile, now and then
+    // or when the way ahead is blocked, queue a turn into a random corridor other
+    // than the one he came from (unless it is a dead end)
+    private void steerPacmen() {
+        int tileSize = sim.tileSize;
+        for (Block pacman : sim.pacmen) {
+            if (pacman.x % tileSize != 0 || pacman.y % tileSize != 0) {
+                continue;
+            }
+            int cell = sim.pacmanCell(pacman);
+            boolean blocked = sim.neighbourCell(cell, pacman.direction) < 0;
+            if (!blocked && random.nextInt(4) != 0) {
+                continue;
+            }
+            char reverse = GhostBrain.reverse(pacman.direction);
+            char turn = reverse;
+            int first = random.nextInt(4);
+            for (int k = 0; k < 4; k++) {
+                char exit = GhostBrain.EXIT_ORDER[(first + k) & 3];
+                if (exit != reverse && sim.neighbourCell(cell, exit) >= 0) {
+                    turn = exit;
+                    break;
+                }
+            }
+            pacman.desiredDirection = turn;
+        }
+    }
+
+    // Times a Pac-Man ran into a ghost
+    long deaths() {
+        return Integer.MAX_VALUE - (long) sim.lives;
+    }
+
+    // Stop the worker threads
+    @Override
+    public void close() {
+        if (sim.ghostPool != null) {
+            sim.ghostPool.shutdown();
+        }
+    }
+
+    // Deaths per second of game time over the given number of ticks
+    static double deathRate(long deaths, long ticks) {
+        return ticks == 0 ? 0 : deaths * 1000.0 / (ticks * Simulation.TICK_MILLIS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int size = 500;
+        int ghostCount = 5000;
+        int pacmanCount = 8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int seconds = 10;
+        long seed = 1;
+        for (String arg : args) {
+            if (arg.startsWith("--size=")) {
+                size = Integer.parseInt(arg.substring("--size=".length()));
+            } else if (arg.startsWith("--ghosts=")) {
+                ghostCount = Integer.parseInt(arg.substring("--ghosts=".length()));
+            } else if (arg.startsWith("--pacmen=")) {
+                pacmanCount = Integer.parseInt(arg.substring("--pacmen=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Integer.parseInt(arg.substring("--seconds=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            }
+        }
+
+        long buildStart = System.nanoTime();
+        MazeLayout layout = new MazeGenerator(size, size).layout(seed);
+        try (Swarm swarm = new Swarm(layout, ghostCount, pacmanCount, threads, seed)) {
+            Simulation sim = swarm.sim;
+            boolean parallel = sim.ghostPool != null && sim.ghosts.count >= Simulation.PARALLEL_THRESHOLD;
+            System.out.printf("%dx%d generated maze, %d ghosts, %d Pac-Men, %s, set up in %.0f ms%n",
+                    layout.rowCount, layout.columnCount, sim.ghosts.count, sim.pacmen.length,
+                    parallel ? "chunks of " + Simulation.CHUNK_SIZE + " ghosts on " + threads + " threads"
+                            : "sequential",
+                    (System.nanoTime() - buildStart) / 1e6);
+
+            // Run ticks back to back and report every second
+            LatencyHistogram overall = new LatencyHistogram();
+            LatencyHistogram tickTimes = swarm.stats.total[TickStats.TICK];
+            LatencyHistogram ghostTimes = swarm.stats.total[TickStats.GHOSTS];
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            long nextReport = System.nanoTime() + 1_000_000_000L;
+            long reportTick = 0;
+            long reportDeaths = 0;
+            while (System.nanoTime() < end) {
+                long start = System.nanoTime();
+                swarm.step();
+                overall.record(System.nanoTime() - start);
+                if (System.nanoTime() >= nextReport) {
+                    long ticks = sim.tick - reportTick;
+                    System.out.printf("ticks/s %d, tick p50 %.2f ms, p99 %.2f ms, max %.2f ms, ghosts p99 %.2f ms,"
+                            + " relinks/tick %.0f, score %d, deaths/s %.2f%n",
+                            ticks, tickTimes.percentile(50) / 1e6, tickTimes.percentile(99) / 1e6,
+                            tickTimes.max() / 1e6, ghostTimes.percentile(99) / 1e6,
+                            (double) sim.hash.relinks / ticks, sim.score,
+                            deathRate(swarm.deaths() - reportDeaths, ticks));
+                    tickTimes.reset();
+                    ghostTimes.reset();
+                    sim.hash.relinks = 0;
+                    reportTick = sim.tick;
+                    reportDeaths = swarm.deaths();
+                    nextReport += 1_000_000_000L;
+                }
+            }
+            long p99 = overall.percentile(99);
+            System.out.printf("%d ticks, %.2f deaths/s, p99 %.2f ms of the %.2f ms budget: %s 60 Hz%n", sim.tick,
+                    deathRate(swarm.deaths(), sim.tick), p99 / 1e6, TICK_BUDGET_NANOS / 1e6,
+                    p99 <= TICK_BUDGET_NANOS ? "holds" : "does NOT hold");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// JDK Flight Recorder event emitted for every simulation tick while a recording
+// with this event enabled is running, with the time spent in each phase
+@Name("pacman.Tick")
+@Label("Game Tick")
+@Category("Pac-Man")
+@Description("Time spent in each phase of one simulation tick")
+@StackTrace(false)
+public class TickEvent extends jdk.jfr.Event {
+    @Label("Tick")
+    long tick;
+
+    @Label("Pac-Man Movement")
+    @Timespan(Timespan.NANOSECONDS)
+    long pacmanMovement;
+
+    @Label("Ghost Update")
+    @Timespan(Timespan.NANOSECONDS)
+    long ghostUpdate;
+
+    @Label("Food and Cherry")
+    @Timespan(Timespan.NANOSECONDS)
+    long foodAndCherry;
+
+    @Label("Level Reload")
+    @Timespan(Timespan.NANOSECONDS)
+    long levelReload;
+
+    @Label("Whole Tick")
+    @Timespan(Timespan.NANOSECONDS)
+    long total;
+}
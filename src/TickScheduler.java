@@ -0,0 +1,253 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Deterministic scheduler for timed game effects, counted in ticks rather than
+// wall-clock time so replays and snapshots reproduce them exactly. Events are a
+// kind and an int argument kept in a binary min-heap of primitive arrays,
+// ordered by due tick and then by scheduling order. Checking for due events is
+// a single comparison, so a tick costs the same however many effects are
+// pending, and nothing is allocated once the arrays have grown to the game's
+// needs.
+//
+// Cancelling is lazy, so it costs the same however many events are pending:
+// cancel(kind) only records the sequence number reached, and events of that
+// kind scheduled before it are dropped when they reach the top of the heap, or
+// all at once when they fill at least half of a full heap.
+public class TickScheduler {
+    static final int MAX_KINDS = 32; // Kinds are 0 to MAX_KINDS - 1
+
+    private long[] due = new long[16]; // Tick each event is due on
+    private long[] order = new long[16]; // Scheduling sequence number, breaks ties
+    private long[] payload = new long[16]; // Kind in the high 32 bits, argument in the low 32
+    private int size = 0; // Number of events in the heap, cancelled ones included
+    private long sequence = 0; // Sequence number for the next event
+    private final long[] cancelledBefore = new long[MAX_KINDS]; // By kind: events numbered below this are cancelled
+    private final int[] pendingOfKind = new int[MAX_KINDS]; // By kind: events not yet fired or cancelled
+    private int pending = 0; // Events not yet fired or cancelled
+
+    // Schedule an event of the given kind to fire on the given tick
+    void schedule(long tick, int kind, int argument) {
+        pendingOfKind[kind]++;
+        pending++;
+        if (size == due.length && size >= 2 * pending) {
+            purge(); // Mostly cancelled events: make room rather than grow
+        }
+        if (size == due.length) {
+            due = Arrays.copyOf(due, size * 2);
+            order = Arrays.copyOf(order, size * 2);
+            payload = Arrays.copyOf(payload, size * 2);
+        }
+        int i = size++;
+        due[i] = tick;
+        order[i] = sequence++;
+        payload[i] = (long) kind << 32 | (argument & 0xFFFFFFFFL);
+        siftUp(i);
+    }
+
+    // Whether an event is due on or before the given tick
+    boolean hasDue(long tick) {
+        dropCancelled();
+        return size > 0 && due[0] <= tick;
+    }
+
+    // Remove the earliest event and return its kind and argument packed into a
+    // long (see kind() and argument())
+    long pop() {
+        dropCancelled();
+        long event = payload[0];
+        removeTop();
+        pendingOfKind[kind(event)]--;
+        pending--;
+        return event;
+    }
+
+    // Kind of a popped event
+    static int kind(long event) {
+        return (int) (event >>> 32);
+    }
+
+    // Argument of a popped event
+    static int argument(long event) {
+        return (int) event;
+    }
+
+    // Cancel every pending event of the given kind
+    void cancel(int kind) {
+        cancelledBefore[kind] = sequence;
+        pending -= pendingOfKind[kind];
+        pendingOfKind[kind] = 0;
+    }
+
+    // Cancel every pending event; the sequence numbers start over, as nothing
+    // is left to order the new events against
+    void clear() {
+        size = 0;
+        sequence = 0;
+        pending = 0;
+        Arrays.fill(pendingOfKind, 0);
+        Arrays.fill(cancelledBefore, 0);
+    }
+
+    // Number of pending events
+    int size() {
+        return pending;
+    }
+
+    // Bytes save() writes for the pending events
+    int savedSize() {
+        return 12 + 24 * pending;
+    }
+
+    // Write the pending events, in the order they will fire, and the sequence
+    // counter. The heap is tidied up first: cancelled events are dropped and
+    // the rest sorted (a sorted array is still a heap), so games that will play
+    // out the same save the same bytes, however their heaps were built.
+    void save(ByteBuffer out) {
+        if (size != pending) {
+            purge();
+        }
+        for (int i = 1; i < size; i++) {
+            if (!before(i - 1, i)) {
+                sort();
+                break;
+            }
+        }
+        out.putInt(size);
+        out.putLong(sequence);
+        for (int i = 0; i < size; i++) {
+            out.putLong(due[i]);
+            out.putLong(order[i]);
+            out.putLong(payload[i]);
+        }
+    }
+
+    // Replace the pending events with ones written by save(); the heap comes
+    // back exactly as it was, so events fire in the same order
+    void restore(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 24) {
+            throw new IllegalArgumentException("Malformed scheduler state: " + count + " events");
+        }
+        sequence = in.getLong();
+        while (due.length < count) {
+            due = Arrays.copyOf(due, due.length * 2);
+            order = Arrays.copyOf(order, due.length);
+            payload = Arrays.copyOf(payload, due.length);
+        }
+        Arrays.fill(pendingOfKind, 0);
+        Arrays.fill(cancelledBefore, 0);
+        size = 0;
+        pending = 0;
+        for (int i = 0; i < count; i++) {
+            due[i] = in.getLong();
+            order[i] = in.getLong();
+            payload[i] = in.getLong();
+            int kind = kind(payload[i]);
+            if (kind < 0 || kind >= MAX_KINDS) {
+                throw new IllegalArgumentException("Malformed scheduler state: event of kind " + kind);
+            }
+            pendingOfKind[kind]++;
+            pending++;
+            size++;
+        }
+    }
+
+    // Remove every cancelled event from the heap and restore the heap order
+    private void purge() {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!cancelled(i)) {
+                move(i, kept++);
+            }
+        }
+        size = kept;
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    // Sort the heap by firing order, in place: heapsort leaves the events in
+    // descending order, which is then reversed
+    private void sort() {
+        int count = size;
+        for (int end = count - 1; end > 0; end--) {
+            swap(0, end); // Earliest remaining event to the back
+            size = end;
+            siftDown(0);
+        }
+        size = count;
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            swap(i, j);
+        }
+    }
+
+    // Whether the event at heap index i was cancelled
+    private boolean cancelled(int i) {
+        return order[i] < cancelledBefore[kind(payload[i])];
+    }
+
+    // Pop cancelled events off the top of the heap, so the top is a pending
+    // event; each cancelled event is dropped once
+    private void dropCancelled() {
+        while (size > 0 && cancelled(0)) {
+            removeTop();
+        }
+    }
+
+    private void removeTop() {
+        size--;
+        if (size > 0) {
+            move(size, 0);
+            siftDown(0);
+        }
+    }
+
+    // Whether event a should fire before event b
+    private boolean before(int a, int b) {
+        return due[a] < due[b] || (due[a] == due[b] && order[a] < order[b]);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (!before(i, parent)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int child = left + 1 < size && before(left + 1, left) ? left + 1 : left;
+            if (!before(child, i)) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void move(int from, int to) {
+        due[to] = due[from];
+        order[to] = order[from];
+        payload[to] = payload[from];
+    }
+
+    private void swap(int a, int b) {
+        long t = due[a];
+        due[a] = due[b];
+        due[b] = t;
+        t = order[a];
+        order[a] = order[b];
+        order[b] = t;
+        t = payload[a];
+        payload[a] = payload[b];
+        payload[b] = t;
+    }
+}
@@ -0,0 +1,225 @@
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+import jdk.jfr.EventType;
+
+// Per-phase timing for a running game. Simulation.move() and GameRenderer.draw()
+// report how long each phase took; the durations go into histograms
+// (one covering the whole run, one covering the last second for the on-screen
+// overlay) and, while a Flight Recorder recording has them enabled, into
+// TickEvent and FrameEvent. Also exposed over JMX through TickStatsMBean.
+//
+// Ticks and frames must all be recorded from one thread, the one that steps
+// and draws the game (the Swing timer's event dispatch thread in PacMan, the
+// loop thread in ActiveGame). That thread also closes the sampling window and
+// carries out JMX resets, so no histogram is ever cleared while another thread
+// records into it. Other threads (JMX, the overlay's fields) only read, and may
+// see figures a tick behind.
+public class TickStats implements TickStatsMBean {
+    // Phases of a tick, plus drawing
+    static final int PACMAN = 0; // Pac-Man movement
+    static final int GHOSTS = 1; // Ghost update and ghost collisions
+    static final int FOOD = 2; // Food and cherry checks
+    static final int LEVEL = 3; // Level reload after the board is cleared
+    static final int TICK = 4; // The whole tick
+    static final int DRAW = 5; // Drawing a frame
+    static final int PHASES = 6;
+
+    static final long SAMPLE_NANOS = 1_000_000_000L; // Length of the overlay's sampling window
+
+    private static final EventType TICK_EVENT = EventType.getEventType(TickEvent.class);
+    private static final EventType FRAME_EVENT = EventType.getEventType(FrameEvent.class);
+
+    // Allocation counters of the game thread (HotSpot extension of ThreadMXBean)
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    final LatencyHistogram[] total = new LatencyHistogram[PHASES]; // Since start (or reset)
+    private final LatencyHistogram[] window = new LatencyHistogram[PHASES]; // Current sampling window
+    private volatile boolean resetRequested = false; // Set by reset(), carried out by the recording thread
+
+    private volatile long gameThreadId = -1; // Thread running the simulation
+    private long windowStart = System.nanoTime(); // Start of the current sampling window
+    private long windowFrames = 0; // Frames drawn in the current window
+    private long windowAllocated = -1; // Game thread's allocated bytes at the window start
+
+    // Figures from the last completed sampling window, shown by the overlay
+    volatile long sampleTickP50; // Tick p50 in nanoseconds
+    volatile long sampleTickP99; // Tick p99 in nanoseconds
+    volatile long sampleDrawP99; // Draw p99 in nanoseconds
+    volatile double sampleFps; // Frames per second
+    volatile long sampleAllocationRate = -1; // Game thread bytes allocated per second (-1 = unknown)
+
+    // Constructor to create empty histograms
+    TickStats() {
+        for (int i = 0; i < PHASES; i++) {
+            total[i] = new LatencyHistogram();
+            window[i] = new LatencyHistogram();
+        }
+    }
+
+    // Register these stats in the platform MBean server under the given name
+    TickStats register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("pacman:type=TickStats,name=" + ObjectName.quote(name)));
+        } catch (Exception e) {
+            System.err.println("Could not register TickStats MBean: " + e);
+        }
+        return this;
+    }
+
+    // Record one tick's phase durations in nanoseconds (levelReload is -1 when the
+    // board was not reloaded)
+    void recordTick(long tick, long pacman, long ghosts, long food, long levelReload, long whole) {
+        if (gameThreadId < 0) {
+            gameThreadId = Thread.currentThread().getId();
+        }
+        record(PACMAN, pacman);
+        record(GHOSTS, ghosts);
+        record(FOOD, food);
+        if (levelReload >= 0) {
+            record(LEVEL, levelReload);
+        }
+        record(TICK, whole);
+        if (TICK_EVENT.isEnabled()) {
+            TickEvent event = new TickEvent();
+            event.tick = tick;
+            event.pacmanMovement = pacman;
+            event.ghostUpdate = ghosts;
+            event.foodAndCherry = food;
+            event.levelReload = Math.max(levelReload, 0);
+            event.total = whole;
+            event.commit();
+        }
+    }
+
+    // Record the time taken to draw one frame, and roll the sampling window over
+    // once a second
+    void recordFrame(long tick, long draw) {
+        record(DRAW, draw);
+        windowFrames++;
+        if (FRAME_EVENT.isEnabled()) {
+            FrameEvent event = new FrameEvent();
+            event.tick = tick;
+            event.draw = draw;
+            event.commit();
+        }
+        long now = System.nanoTime();
+        if (now - windowStart >= SAMPLE_NANOS) {
+            sample(now);
+        }
+    }
+
+    // Close the current sampling window: publish its figures and clear it for
+    // the next one. Runs on the recording thread, between two recordings.
+    private void sample(long now) {
+        double seconds = (now - windowStart) / 1e9;
+        sampleTickP50 = window[TICK].percentile(50);
+        sampleTickP99 = window[TICK].percentile(99);
+        sampleDrawP99 = window[DRAW].percentile(99);
+        sampleFps = windowFrames / seconds;
+        long threadId = gameThreadId;
+        if (threadId >= 0) {
+            long allocated = THREADS.getThreadAllocatedBytes(threadId);
+            if (windowAllocated >= 0 && allocated >= 0) {
+                sampleAllocationRate = (long) ((allocated - windowAllocated) / seconds);
+            }
+            windowAllocated = allocated;
+        }
+        for (LatencyHistogram histogram : window) {
+            histogram.reset();
+        }
+        windowStart = now;
+        windowFrames = 0;
+    }
+
+    private void record(int phase, long nanos) {
+        if (resetRequested) {
+            resetRequested = false;
+            for (LatencyHistogram histogram : total) {
+                histogram.reset();
+            }
+        }
+        total[phase].record(nanos);
+        window[phase].record(nanos);
+    }
+
+    // TickStatsMBean methods
+
+    @Override
+    public long getTicks() {
+        return total[TICK].count();
+    }
+
+    @Override
+    public long getFrames() {
+        return total[DRAW].count();
+    }
+
+    @Override
+    public long getTickP50Micros() {
+        return total[TICK].percentile(50) / 1000;
+    }
+
+    @Override
+    public long getTickP99Micros() {
+        return total[TICK].percentile(99) / 1000;
+    }
+
+    @Override
+    public long getTickMaxMicros() {
+        return total[TICK].max() / 1000;
+    }
+
+    @Override
+    public long getPacmanMovementP99Micros() {
+        return total[PACMAN].percentile(99) / 1000;
+    }
+
+    @Override
+    public long getGhostUpdateP99Micros() {
+        return total[GHOSTS].percentile(99) / 1000;
+    }
+
+    @Override
+    public long getFoodAndCherryP99Micros() {
+        return total[FOOD].percentile(99) / 1000;
+    }
+
+    @Override
+    public long getLevelReloadP99Micros() {
+        return total[LEVEL].percentile(99) / 1000;
+    }
+
+    @Override
+    public long getDrawP50Micros() {
+        return total[DRAW].percentile(50) / 1000;
+    }
+
+    @Override
+    public long getDrawP99Micros() {
+        return total[DRAW].percentile(99) / 1000;
+    }
+
+    @Override
+    public long getDrawMaxMicros() {
+        return total[DRAW].max() / 1000;
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        return sampleFps;
+    }
+
+    @Override
+    public long getAllocatedBytesPerSecond() {
+        return sampleAllocationRate;
+    }
+
+    // Called from a JMX thread: the totals are cleared by the recording thread
+    // just before it next records
+    @Override
+    public void reset() {
+        resetRequested = true;
+    }
+}
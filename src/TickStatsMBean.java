@@ -0,0 +1,33 @@
+// JMX view of a game's TickStats (times in microseconds); registered under
+// "pacman:type=TickStats,name=..." in the platform MBean server
+public interface TickStatsMBean {
+    long getTicks();
+
+    long getFrames();
+
+    long getTickP50Micros();
+
+    long getTickP99Micros();
+
+    long getTickMaxMicros();
+
+    long getPacmanMovementP99Micros();
+
+    long getGhostUpdateP99Micros();
+
+    long getFoodAndCherryP99Micros();
+
+    long getLevelReloadP99Micros();
+
+    long getDrawP50Micros();
+
+    long getDrawP99Micros();
+
+    long getDrawMaxMicros();
+
+    double getFramesPerSecond();
+
+    long getAllocatedBytesPerSecond();
+
+    void reset();
+}
@@ -0,0 +1,114 @@
+// Tile-indexed occupancy grid for the maze, so wall and food lookups are O(1)
+// per entity instead of a scan over every wall or food block
+public class TileGrid {
+    // Bit flags stored in each cell of the grid
+    static final byte WALL = 1; // Tile is a wall
+
+    static final int DOT_SIZE = 4; // Food dots are small 4x4 pixel squares
+
+    final int rowCount; // Number of rows in the grid
+    final int columnCount; // Number of columns in the grid
+    final int tileSize; // Size of each tile in pixels
+    final byte[] cells; // Row-major cell flags, index = row * columnCount + column
+    final long[] food; // Bitset of the tiles still holding a food dot, by cell index
+    int foodCount = 0; // Number of food dots left on the board
+
+    // Change log for renderers that cache the board: load() bumps the generation,
+    // and every eaten dot's cell index is appended to eatenCells until the next load
+    int generation = 0; // Number of times the board has been (re)loaded
+    final int[] eatenCells; // Cell indexes of the dots eaten since the last load
+    int eatenCount = 0; // Number of valid entries in eatenCells
+
+    private final int dotOffset; // Offset of a food dot from its tile's corner
+
+    // Constructor to allocate the grid for a tile map of the given size
+    TileGrid(int rowCount, int columnCount, int tileSize) {
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.tileSize = tileSize;
+        this.cells = new byte[rowCount * columnCount];
+        this.food = new long[(rowCount * columnCount + 63) >> 6];
+        this.eatenCells = new int[rowCount * columnCount];
+        this.dotOffset = (tileSize - DOT_SIZE) / 2; // 14 pixels for 32 pixel tiles
+    }
+
+    // Reset the grid to a fresh board by copying the layout's initial cells and food
+    void load(MazeLayout layout) {
+        System.arraycopy(layout.cells, 0, cells, 0, cells.length);
+        System.arraycopy(layout.food, 0, food, 0, food.length);
+        foodCount = layout.foodCount;
+        eatenCount = 0;
+        generation++;
+    }
+
+    // Check whether the tile at (row, column) is a wall; tiles off the board are open
+    boolean isWall(int r, int c) {
+        if (r < 0 || c < 0 || r >= rowCount || c >= columnCount) {
+            return false;
+        }
+        return (cells[r * columnCount + c] & WALL) != 0;
+    }
+
+    // Check whether the tile at (row, column) still holds a food dot
+    boolean hasFood(int r, int c) {
+        if (r < 0 || c < 0 || r >= rowCount || c >= columnCount) {
+            return false;
+        }
+        int index = r * columnCount + c;
+        return (food[index >> 6] & (1L << index)) != 0;
+    }
+
+    // Check whether a rectangle overlaps any wall tile; only the (at most four)
+    // tiles under the rectangle are inspected
+    boolean hitsWall(int x, int y, int width, int height) {
+        int c0 = Math.floorDiv(x, tileSize);
+        int c1 = Math.floorDiv(x + width - 1, tileSize);
+        int r0 = Math.floorDiv(y, tileSize);
+        int r1 = Math.floorDiv(y + height - 1, tileSize);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                if (isWall(r, c)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Remove every food dot overlapped by a rectangle and return how many were eaten
+    int eatFood(int x, int y, int width, int height) {
+        int c0 = Math.max(Math.floorDiv(x, tileSize), 0);
+        int c1 = Math.min(Math.floorDiv(x + width - 1, tileSize), columnCount - 1);
+        int r0 = Math.max(Math.floorDiv(y, tileSize), 0);
+        int r1 = Math.min(Math.floorDiv(y + height - 1, tileSize), rowCount - 1);
+        int eaten = 0;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int index = r * columnCount + c;
+                if ((food[index >> 6] & (1L << index)) == 0) {
+                    continue;
+                }
+                // Same overlap test as collision(), against the dot inside the tile
+                int dotX = c * tileSize + dotOffset;
+                int dotY = r * tileSize + dotOffset;
+                if (x < dotX + DOT_SIZE && x + width > dotX && y < dotY + DOT_SIZE && y + height > dotY) {
+                    food[index >> 6] &= ~(1L << index); // Clear the food bit
+                    foodCount--;
+                    eatenCells[eatenCount++] = index; // Let cached food layers patch this tile
+                    eaten++;
+                }
+            }
+        }
+        return eaten;
+    }
+
+    // X-coordinate of the food dot drawn in the given column
+    int dotX(int c) {
+        return c * tileSize + dotOffset;
+    }
+
+    // Y-coordinate of the food dot drawn in the given row
+    int dotY(int r) {
+        return r * tileSize + dotOffset;
+    }
+}
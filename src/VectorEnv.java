@@ -0,0 +1,299 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.LockSupport;
+
+// N PacManEnvs stepped in lockstep across cores. Actions, rewards, done flags
+// and observations of all environments live in one shared direct buffer, which
+// can be a memory-mapped file so that a trainer in another local process reads
+// the observations in place and writes its actions back with no per-step copy.
+// An environment whose episode ends reports its reward and done flag and starts
+// a new episode straight away (its observation is then the new episode's first).
+//
+// Shared buffer, native byte order:
+//   0   int   magic "PMEV"
+//   4   int   number of environments N
+//   8   int   channels, 12 int rows, 16 int columns (observation shape)
+//   20  int   command (STEP, RESET or CLOSE), written by the trainer
+//   24  long  request number, incremented by the trainer after writing a command
+//   32  long  response number, set to the request number once it is carried out
+//   40  long  seed for RESET (environment i uses seed + i)
+//   48  byte  action of each environment (see PacManEnv.ACTIONS), N bytes
+//       byte  done flag of each environment (PacManEnv.RUNNING, TERMINATED or TRUNCATED)
+//       float reward of each environment, 4-byte aligned
+//       byte  observation of each environment, CHANNELS x rows x columns, one after another
+//
+// Usage: java VectorEnv [--envs=N] [--threads=N] [--seconds=N] [--levels=DIR]
+//                       [--serve=FILE]
+// Without --serve it benchmarks stepping with random actions; with --serve it
+// maps FILE and carries out the commands a trainer writes into it.
+public class VectorEnv implements AutoCloseable {
+    static final int MAGIC = 0x504D4556; // "PMEV"
+    static final int STEP = 1; // Command: step every environment with its action
+    static final int RESET = 2; // Command: start new episodes from the seed
+    static final int CLOSE = 3; // Command: stop serving
+    static final int COMMAND = 20; // Offsets of the header fields
+    static final int REQUEST = 24;
+    static final int RESPONSE = 32;
+    static final int SEED = 40;
+    static final int HEADER_SIZE = 48;
+    static final int TILE_SIZE = 32; // Tile size of the simulations
+    static final long MAX_STEPS = 20 * 60 * 1000 / Simulation.TICK_MILLIS; // Episode step limit (20 minutes of play)
+    // Volatile access to the request and response numbers, which another process updates
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    final int count; // Number of environments
+    final ByteBuffer shared; // Shared buffer (see above)
+    final PacManEnv[] envs; // The environments
+    final int actionsOffset; // Offset of the actions in the shared buffer
+    final int doneOffset; // Offset of the done flags
+    final int rewardsOffset; // Offset of the rewards
+    final int observationsOffset; // Offset of the first observation
+    final int observationSize; // Bytes per observation
+
+    private final long[] nextSeed; // Seed of each environment's next episode
+    private final ForkJoinPool pool; // Steps the chunks, or null when stepping on the caller's thread
+    private final RecursiveAction[] chunks; // One task per slice of environments
+    private final RecursiveAction allChunks; // Forks every chunk and waits for them
+
+    // Steps one slice of the environments; slices touch disjoint parts of the buffer
+    private final class StepChunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int from; // First environment of the slice
+        final int to; // One past the last environment of the slice
+
+        StepChunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            stepRange(from, to);
+        }
+    }
+
+    // Constructor to lay the environments out in a shared buffer: a new direct
+    // buffer, or the given file mapped into memory if it is not null
+    VectorEnv(MazeLayout layout, int count, int threads, Path file) throws IOException {
+        this.count = count;
+        this.observationSize = PacManEnv.observationSize(layout);
+        this.actionsOffset = HEADER_SIZE;
+        this.doneOffset = actionsOffset + count;
+        this.rewardsOffset = (doneOffset + count + 3) & ~3;
+        this.observationsOffset = rewardsOffset + 4 * count;
+        int size = observationsOffset + count * observationSize;
+        ByteBuffer buffer;
+        if (file == null) {
+            buffer = ByteBuffer.allocateDirect(size);
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size); // Stays valid after closing
+            }
+        }
+        shared = buffer.order(ByteOrder.nativeOrder());
+        shared.putInt(0, MAGIC);
+        shared.putInt(4, count);
+        shared.putInt(8, PacManEnv.CHANNELS);
+        shared.putInt(12, layout.rowCount);
+        shared.putInt(16, layout.columnCount);
+
+        envs = new PacManEnv[count];
+        nextSeed = new long[count];
+        for (int i = 0; i < count; i++) {
+            ByteBuffer slice = shared.duplicate();
+            slice.position(observationsOffset + i * observationSize);
+            slice.limit(observationsOffset + (i + 1) * observationSize);
+            envs[i] = new PacManEnv(layout, TILE_SIZE, MAX_STEPS, slice);
+        }
+
+        if (threads > 1 && count > 1) {
+            int slices = Math.min(threads, count);
+            pool = new ForkJoinPool(threads);
+            chunks = new RecursiveAction[slices];
+            for (int k = 0; k < slices; k++) {
+                chunks[k] = new StepChunk(k * count / slices, (k + 1) * count / slices);
+            }
+            allChunks = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    for (RecursiveAction chunk : chunks) {
+                        chunk.reinitialize(); // Tasks are reused every step
+                    }
+                    invokeAll(chunks);
+                }
+            };
+        } else {
+            pool = null;
+            chunks = null;
+            allChunks = null;
+        }
+    }
+
+    // Start a new episode in every environment; environment i uses seed + i and
+    // later episodes carry on from there in steps of N
+    void reset(long seed) {
+        for (int i = 0; i < count; i++) {
+            envs[i].reset(seed + i);
+            nextSeed[i] = seed + i + count;
+            shared.put(actionsOffset + i, (byte) 0);
+            shared.put(doneOffset + i, PacManEnv.RUNNING);
+            shared.putFloat(rewardsOffset + 4 * i, 0f);
+        }
+    }
+
+    // Set the action environment i takes on the next step
+    void setAction(int i, int action) {
+        shared.put(actionsOffset + i, (byte) action);
+    }
+
+    // Reward of environment i on the last step
+    float reward(int i) {
+        return shared.getFloat(rewardsOffset + 4 * i);
+    }
+
+    // Done flag of environment i on the last step
+    byte done(int i) {
+        return shared.get(doneOffset + i);
+    }
+
+    // Step every environment with the action in the shared buffer
+    void step() {
+        if (pool != null) {
+            allChunks.reinitialize();
+            pool.invoke(allChunks);
+        } else {
+            stepRange(0, count);
+        }
+    }
+
+    private void stepRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            PacManEnv env = envs[i];
+            float reward = env.step(shared.get(actionsOffset + i));
+            byte done = env.done();
+            shared.putFloat(rewardsOffset + 4 * i, reward);
+            shared.put(doneOffset + i, done);
+            if (done != PacManEnv.RUNNING) {
+                env.reset(nextSeed[i]);
+                nextSeed[i] += count;
+            }
+        }
+    }
+
+    // Carry out the trainer's commands until it sends CLOSE. Waits by spinning
+    // briefly, then parking, so a trainer stepping flat out gets a quick answer
+    // and an idle one costs no CPU.
+    void serve() {
+        long handled = (long) LONGS.getVolatile(shared, REQUEST);
+        LONGS.setRelease(shared, RESPONSE, handled);
+        while (true) {
+            long request = (long) LONGS.getVolatile(shared, REQUEST);
+            int idle = 0;
+            while (request == handled) {
+                if (++idle < 10_000) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(50_000);
+                }
+                request = (long) LONGS.getVolatile(shared, REQUEST);
+            }
+            int command = shared.getInt(COMMAND);
+            if (command == STEP) {
+                step();
+            } else if (command == RESET) {
+                reset(shared.getLong(SEED));
+            }
+            handled = request;
+            LONGS.setRelease(shared, RESPONSE, handled); // Publishes the results written before it
+            if (command == CLOSE) {
+                return;
+            }
+        }
+    }
+
+    // Stop the worker threads
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    // Benchmark: step the environments with random actions and report steps per second
+    static void benchmark(MazeLayout layout, int count, int threads, int seconds) throws IOException {
+        try (VectorEnv vector = new VectorEnv(layout, count, threads, null)) {
+            vector.reset(1);
+            Rng random = new Rng(0x9E3779B97F4A7C15L); // Picks the actions
+            long steps = 0;
+            long episodes = 0;
+            long warmupEnd = System.nanoTime() + 1_000_000_000L;
+            long start = 0;
+            long end = warmupEnd + seconds * 1_000_000_000L;
+            while (true) {
+                long now = System.nanoTime();
+                if (start == 0 && now >= warmupEnd) {
+                    start = now; // Count from the end of the warmup
+                    steps = 0;
+                    episodes = 0;
+                } else if (now >= end) {
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    vector.setAction(i, random.nextInt(PacManEnv.ACTIONS.length));
+                }
+                vector.step();
+                steps += count;
+                for (int i = 0; i < count; i++) {
+                    episodes += vector.done(i) != PacManEnv.RUNNING ? 1 : 0;
+                }
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            int cores = Math.min(threads, Runtime.getRuntime().availableProcessors());
+            System.out.printf("%d envs on %d threads: %.0f steps/s (%.0f per core), %.2f us/step, %d episodes,"
+                    + " %d bytes/observation%n", count, threads, steps / elapsed, steps / elapsed / Math.max(1, cores),
+                    elapsed * 1e6 / steps * Math.max(1, cores), episodes, vector.observationSize);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = 64;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int seconds = 5;
+        MazeLayout layout = new MazeLayout(Simulation.CLASSIC_MAP);
+        String serveFile = null;
+        for (String arg : args) {
+            if (arg.startsWith("--envs=")) {
+                count = Integer.parseInt(arg.substring("--envs=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Integer.parseInt(arg.substring("--seconds=".length()));
+            } else if (arg.startsWith("--levels=")) {
+                layout = new LevelLibrary(Paths.get(arg.substring("--levels=".length()))).level(0);
+            } else if (arg.startsWith("--serve=")) {
+                serveFile = arg.substring("--serve=".length());
+            }
+        }
+        if (serveFile != null) {
+            try (VectorEnv vector = new VectorEnv(layout, count, threads, Paths.get(serveFile))) {
+                vector.reset(1);
+                System.out.println("Serving " + count + " environments through " + serveFile);
+                vector.serve();
+            }
+            return;
+        }
+        benchmark(layout, 1, 1, seconds); // Single environment, for the per-core baseline
+        benchmark(layout, count, threads, seconds);
+    }
+}
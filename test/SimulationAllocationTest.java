@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+
+// Steady-state game operations must not allocate, so long sessions have no GC
+// pauses. Each test warms an operation up (class loading, growing the
+// scheduler and eaten log, JIT compilation) and then checks the thread's
+// allocated-bytes counter does not move while it runs many more times.
+//
+// Code paths that only run now and then (a lost life, a cleared board) can
+// still be compiled or recompiled during the measurement, and the JIT's
+// switch-over may allocate a few bytes once. So a run is measured in several
+// rounds and passes if any round allocates nothing: an operation that really
+// allocates does so in every round.
+public class SimulationAllocationTest {
+    static final int WARMUP = 50_000; // Calls before measuring
+    static final int MEASURED = 20_000; // Calls per measured round
+    static final int ROUNDS = 5; // Measured rounds, at least one of which must not allocate
+    static final char[] TURNS = { 'U', 'L', 'D', 'R' }; // Inputs step() cycles through
+
+    // Per-thread allocation counter (HotSpot extension of ThreadMXBean)
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // A game on the classic map that never ends
+    static Simulation endlessSimulation() {
+        Simulation sim = new Simulation(Simulation.CLASSIC_MAP, 32, 42);
+        sim.lives = Integer.MAX_VALUE;
+        return sim;
+    }
+
+    // Fewest bytes the current thread allocated in a round of MEASURED calls to
+    // an operation, after WARMUP calls
+    static long allocatedBytes(Runnable operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        long thread = Thread.currentThread().getId();
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS && fewest > 0; round++) {
+            long before = THREADS.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < MEASURED; i++) {
+                operation.run();
+            }
+            fewest = Math.min(fewest, THREADS.getThreadAllocatedBytes(thread) - before);
+        }
+        return fewest;
+    }
+
+    // Steps with a repeating pattern of turns, so Pac-Man eats, dies and
+    // clears the board along the way
+    static void step(Simulation sim) {
+        sim.step(sim.tick % 8 == 0 ? TURNS[(int) (sim.tick / 8) % 4] : Simulation.NO_INPUT);
+    }
+
+    @Test
+    void tickDoesNotAllocate() {
+        Simulation sim = endlessSimulation();
+        assertEquals(0, allocatedBytes(() -> step(sim)));
+    }
+
+    @Test
+    void crowdTickDoesNotAllocate() {
+        Simulation sim = endlessSimulation();
+        sim.addCrowd(3, 60);
+        assertEquals(0, allocatedBytes(() -> step(sim)));
+    }
+
+    @Test
+    void loadMapDoesNotAllocate() {
+        Simulation sim = endlessSimulation();
+        assertEquals(0, allocatedBytes(sim::loadMap));
+    }
+
+    @Test
+    void spawnCherryDoesNotAllocate() {
+        Simulation sim = endlessSimulation();
+        assertEquals(0, allocatedBytes(sim::spawnCherry));
+    }
+
+    @Test
+    void collisionDoesNotAllocate() {
+        Simulation sim = endlessSimulation();
+        int[] touching = new int[sim.ghosts.count];
+        assertEquals(0, allocatedBytes(() -> {
+            step(sim);
+            sim.touchingGhosts(sim.pacman, touching);
+        }));
+    }
+}